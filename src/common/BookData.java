@@ -3,9 +3,10 @@ package common;
 import html.HtmlBook;
 import html.HtmlChapter;
 import java.io.File;
-import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -77,14 +78,14 @@ public enum BookData{
   private final String filename;
   private final String firstWords;
   private final String lastWords;
-  private final Function<HtmlBook, Collection<HtmlChapter>> chapterizer;
+  private final BiConsumer<HtmlBook, Consumer<? super HtmlChapter>> chapterizer;
   
   private BookData(
       boolean isNovel, 
       String filename, 
       String firstWords, 
       String lastWords, 
-      Function<HtmlBook, Collection<HtmlChapter>> chapterizer){
+      BiConsumer<HtmlBook, Consumer<? super HtmlChapter>> chapterizer){
     
     this.isNovel = isNovel;
     this.filename = filename;
@@ -101,7 +102,12 @@ public enum BookData{
     return !isNovel;
   }
   
-  public Function<HtmlBook, Collection<HtmlChapter>> getChapterizer(){
+  /**
+   * <p>Returns the operation that splits a cleaned HtmlBook of this book into chapters, passing
+   * each chapter to the given consumer as soon as it has been cut from the book.</p>
+   * @return the operation that splits a cleaned HtmlBook of this book into chapters
+   */
+  public BiConsumer<HtmlBook, Consumer<? super HtmlChapter>> getChapterizer(){
     return chapterizer;
   }
   
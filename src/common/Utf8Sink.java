@@ -0,0 +1,197 @@
+package common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <p>Writes text to a channel as UTF-8. Chars are encoded straight into a direct ByteBuffer,
+ * which is handed to the channel only when it is full and when the sink is flushed or closed,
+ * so the channel receives large blocks no matter how small the pieces of text written to the
+ * sink are.</p> <p>Each thread has one buffer, which every Utf8Sink opened on that thread
+ * uses, so a thread must close one Utf8Sink before opening another.</p>
+ */
+public final class Utf8Sink implements Closeable {
+  
+  private static final int BUFFER_SIZE = 1 << 16;
+  
+  /**
+   * <p>The longest encoding of a single char, or of a surrogate pair.</p>
+   */
+  private static final int MAX_CHAR_BYTES = 4;
+  
+  private static final ThreadLocal<ByteBuffer> BUFFERS = 
+      ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+  
+  /**
+   * <p>Written in place of a surrogate char that is not part of a surrogate pair, as
+   * {@link String#getBytes(java.nio.charset.Charset) String.getBytes} does.</p>
+   */
+  private static final byte REPLACEMENT = '?';
+  
+  private final WritableByteChannel channel;
+  
+  private final ByteBuffer buffer;
+  
+  /**
+   * <p>A high surrogate char written last and not yet encoded because the low surrogate that
+   * goes with it may be written next, or 0 if there is none.</p>
+   */
+  private char pendingHigh = 0;
+  
+  /**
+   * <p>The number of bytes written to the channel so far.</p>
+   */
+  private long drained = 0;
+  
+  /**
+   * <p>Constructs a Utf8Sink writing to {@code channel}.</p>
+   * @param channel the channel to which the encoded text is written
+   */
+  public Utf8Sink(WritableByteChannel channel){
+    this.channel = channel;
+    this.buffer = BUFFERS.get();
+    buffer.clear();
+  }
+  
+  /**
+   * <p>Writes {@code c}.</p>
+   * @param c the char to write
+   * @throws IOException if the channel cannot be written
+   */
+  public void write(char c) throws IOException{
+    if(buffer.remaining() < MAX_CHAR_BYTES){
+      drain();
+    }
+    encode(c);
+  }
+  
+  /**
+   * <p>Writes the chars of {@code s}.</p>
+   * @param s the text to write
+   * @throws IOException if the channel cannot be written
+   */
+  public void write(String s) throws IOException{
+    for(int i = 0; i < s.length(); i++){
+      if(buffer.remaining() < MAX_CHAR_BYTES){
+        drain();
+      }
+      encode(s.charAt(i));
+    }
+  }
+  
+  /**
+   * <p>Writes {@code bytes}, which must be UTF-8 encoded text, as they are.</p>
+   * @param bytes the encoded text to write
+   * @throws IOException if the channel cannot be written
+   */
+  public void write(byte[] bytes) throws IOException{
+    write(bytes, 0, bytes.length);
+  }
+  
+  /**
+   * <p>Writes {@code length} bytes of {@code bytes} starting at {@code offset}, which must be
+   * UTF-8 encoded text, as they are.</p>
+   * @param bytes the encoded text to write
+   * @param offset the index in {@code bytes} of the first byte to write
+   * @param length the number of bytes to write
+   * @throws IOException if the channel cannot be written
+   */
+  public void write(byte[] bytes, int offset, int length) throws IOException{
+    flushPending();
+    for(int from = offset, end = offset + length; from < end;){
+      if(!buffer.hasRemaining()){
+        drain();
+      }
+      int count = Math.min(buffer.remaining(), end - from);
+      buffer.put(bytes, from, count);
+      from += count;
+    }
+  }
+  
+  /**
+   * <p>Returns the number of bytes of encoded text written to this sink so far, whether or not
+   * they have reached the channel yet. A high surrogate char written last is not counted until
+   * the char after it is written.</p>
+   * @return the number of bytes written to this sink so far
+   */
+  public long position(){
+    return drained + buffer.position();
+  }
+  
+  private void encode(char c){
+    if(pendingHigh != 0){
+      char high = pendingHigh;
+      pendingHigh = 0;
+      if(Character.isLowSurrogate(c)){
+        int codePoint = Character.toCodePoint(high, c);
+        buffer.put((byte) (0xF0 | (codePoint >>> 18)));
+        buffer.put((byte) (0x80 | ((codePoint >>> 12) & 0x3F)));
+        buffer.put((byte) (0x80 | ((codePoint >>> 6) & 0x3F)));
+        buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+        return;
+      }
+      buffer.put(REPLACEMENT);
+    }
+    
+    if(c < 0x80){
+      buffer.put((byte) c);
+    } else if(c < 0x800){
+      buffer.put((byte) (0xC0 | (c >>> 6)));
+      buffer.put((byte) (0x80 | (c & 0x3F)));
+    } else if(Character.isHighSurrogate(c)){
+      pendingHigh = c;
+    } else if(Character.isLowSurrogate(c)){
+      buffer.put(REPLACEMENT);
+    } else{
+      buffer.put((byte) (0xE0 | (c >>> 12)));
+      buffer.put((byte) (0x80 | ((c >>> 6) & 0x3F)));
+      buffer.put((byte) (0x80 | (c & 0x3F)));
+    }
+  }
+  
+  /**
+   * <p>Encodes a {@link #pendingHigh pending high surrogate} as the replacement for an unpaired
+   * surrogate, since nothing written after this point can complete its pair.</p>
+   */
+  private void flushPending() throws IOException{
+    if(pendingHigh != 0){
+      pendingHigh = 0;
+      if(!buffer.hasRemaining()){
+        drain();
+      }
+      buffer.put(REPLACEMENT);
+    }
+  }
+  
+  /**
+   * <p>Writes the content of the buffer to the channel and empties the buffer.</p>
+   */
+  private void drain() throws IOException{
+    buffer.flip();
+    drained += buffer.remaining();
+    while(buffer.hasRemaining()){
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+  
+  /**
+   * <p>Writes everything written to this sink so far to the channel.</p>
+   * @throws IOException if the channel cannot be written
+   */
+  public void flush() throws IOException{
+    flushPending();
+    drain();
+  }
+  
+  @Override
+  public void close() throws IOException{
+    try{
+      flush();
+    } finally{
+      channel.close();
+    }
+  }
+}
@@ -91,8 +91,17 @@ public class AnchorInfo implements Comparable<AnchorInfo>{
    * linked file of the quote being linked.
    */
 	public static String href(Location loc){
-		String f = loc.getFilename();
-		return Files.stripFolderExtension(f) + Files.HTML_EXT + ADDRESS_ID_CONNECTOR + locationID(loc);
+		return address(loc) + ADDRESS_ID_CONNECTOR + locationID(loc);
+	}
+	
+  /**
+   * <p>Returns the name of the html chapter file that contains {@code loc}, the part of
+   * {@link #href(Location) href} before the {@link #ADDRESS_ID_CONNECTOR hash}.</p>
+   * @param loc the destination of a link
+   * @return the name of the html chapter file that contains {@code loc}
+   */
+	public static String address(Location loc){
+		return Files.stripFolderExtension(loc.getFilename()) + Files.HTML_EXT;
 	}
 	
   /**
@@ -112,6 +121,30 @@ public class AnchorInfo implements Comparable<AnchorInfo>{
 		return Integer.toString(loc.getIndex());
 	}
 	
+  /**
+   * <p>Returns a shorter value than {@link #locationID(Location) locationID} for the id attribute
+   * of an anchor tag on a phrase at the specified Location, for
+   * {@link Markup#isMinified() minified} chapters: the word index in base 36.</p>
+   * @param loc a Location whose equivalent short id in an html file of a chapter is to be
+   * returned.
+   * @return the short value of the id attribute of an anchor tag on a phrase at {@code loc}
+   */
+	public static String shortLocationID(Location loc){
+		return Integer.toString(loc.getIndex(), Character.MAX_RADIX);
+	}
+	
+  /**
+   * <p>Returns the value of the href attribute of a link to the anchor at {@code loc} in a
+   * {@link Markup#isMinified() minified} chapter, which is {@link #href(Location) href} with
+   * the {@link #shortLocationID(Location) short id} in place of the id.</p>
+   * @param loc the destination of the link whose href value is returned
+   * @return the value of the href attribute of a link to the anchor at {@code loc} in a minified
+   * chapter
+   */
+	public static String shortHref(Location loc){
+		return address(loc) + ADDRESS_ID_CONNECTOR + shortLocationID(loc);
+	}
+	
   /**
    * <p>Returns the plaintext equivalent of the opening tag of the anchor represented by this
    * object.</p>
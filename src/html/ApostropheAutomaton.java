@@ -0,0 +1,350 @@
+package html;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import text.Phrase;
+
+/**
+ * <p>A set of patterns of characters around an apostrophe, compiled into a single automaton, meant
+ * for use in determining which instances of a right single quote in the text of ASOIAF should be
+ * ordinary apostrophes instead.</p> <p>Each pattern is a string containing an apostrophe. The
+ * characters before the apostrophe are compiled, in reverse order, into a trie that is walked
+ * backward from a right single quote, and the characters after the apostrophe are compiled into a
+ * trie that is walked forward from it. Each side's trie is run as a nondeterministic automaton
+ * in a single bounded scan of the literal characters on that side of the quote, collecting the
+ * patterns whose side it has matched. A right single quote matches if some pattern is matched on
+ * both sides.</p>
+ */
+class ApostropheAutomaton {
+  
+  /**
+   * <p>Used in a pattern, this represents any {@link Phrase#isPhraseChar(char) word
+   * character}. It is an asterisk: {@value}</p>
+   */
+  private static final char WORD_CHAR = '*';
+  
+  /**
+   * <p>Used in a pattern, this represents any {@link Phrase#isPhraseChar(char) non-word
+   * character}, including the lack of a character past either end of the text. It is an
+   * ampersand: {@value}</p>
+   */
+  private static final char NON_WORD_CHAR = '&';
+  
+  /**
+   * <p>Used in a pattern, this represents any {@link #isAlphabetical(char) alphabetic
+   * character}. It is an at sign: {@value}</p>
+   */
+  private static final char ALPHA_CHAR = '@';
+  
+  /**
+   * <p>Stands in for the lack of a character past either end of the text being scanned. It
+   * matches only {@link #NON_WORD_CHAR NON_WORD_CHAR}.</p>
+   */
+  private static final char NONE = '\uFFFF';
+  
+  /**
+   * <p>The automaton for the characters before the apostrophe, walked with decreasing index.</p>
+   */
+  private final Trie before;
+  
+  /**
+   * <p>The automaton for the characters after the apostrophe, walked with increasing index.</p>
+   */
+  private final Trie after;
+  
+  /**
+   * <p>Constructs an ApostropheAutomaton that matches a right single quote if any of the
+   * specified {@code patterns} matches it.</p>
+   * @param patterns strings each containing an apostrophe used to specify characters around an
+   * apostrophe
+   */
+  ApostropheAutomaton(List<String> patterns){
+    int words = (patterns.size() + Long.SIZE - 1) / Long.SIZE;
+    TrieBuilder beforeBuilder = new TrieBuilder(words);
+    TrieBuilder afterBuilder = new TrieBuilder(words);
+    
+    for(int id = 0; id < patterns.size(); id++){
+      String s = patterns.get(id).toLowerCase();
+      int index = s.indexOf(CharLiteral.APOSTROPHE.c);
+      
+      StringBuilder reversedBefore = new StringBuilder(s.substring(0, index)).reverse();
+      beforeBuilder.add(reversedBefore.toString(), id);
+      afterBuilder.add(s.substring(index + 1), id);
+    }
+    
+    this.before = beforeBuilder.build();
+    this.after = afterBuilder.build();
+  }
+  
+  /**
+   * <p>Returns true if the element of {@code content} at {@code index} is a right single quote
+   * around which the literal characters match any of this automaton's patterns, false
+   * otherwise.</p>
+   * @param content a list of HtmlEntity
+   * @param index the position in {@code content} of the character to be tested
+   * @return true if the element of {@code content} at {@code index} is a right single quote
+   * around which the literal characters match any of this automaton's patterns, false otherwise
+   */
+  boolean matches(List<HtmlEntity> content, int index){
+    if(!CharLiteral.RIGHT_SINGLE_QUOTE.equals(content.get(index))){
+      return false;
+    }
+    
+    long[] beforeMatches = before.run(content, index, -1);
+    if(isEmpty(beforeMatches)){
+      return false;
+    }
+    long[] afterMatches = after.run(content, index, 1);
+    for(int i = 0; i < beforeMatches.length; i++){
+      if((beforeMatches[i] & afterMatches[i]) != 0){
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  private static boolean isEmpty(long[] bits){
+    for(long word : bits){
+      if(word != 0){
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * <p>Returns true if {@code c} is an alphabetical character, false otherwise.</p>
+   * @param c a character to be evaluated as alphabetical or not
+   * @return true if {@code c} is an alphabetical character, false otherwise
+   */
+  private static boolean isAlphabetical(char c){
+    return c != NONE
+        && !(c == CharLiteral.APOSTROPHE.c
+            || c == '-'
+            || ('0' <= c && c <= '9'))
+        && Phrase.isPhraseChar(c);
+  }
+  
+  /**
+   * <p>Returns the literal character wrapped by the element of {@code content} at
+   * {@code index}, or {@link #NONE NONE} if {@code index} is outside {@code content}.</p>
+   */
+  private static char characterAt(List<HtmlEntity> content, int index){
+    return 0 <= index && index < content.size()
+        ? ((CharLiteral) content.get(index)).c
+        : NONE;
+  }
+  
+  /**
+   * <p>Returns the position of the nearest {@link CharLiteral literal character} in
+   * {@code content} beyond {@code index} in the direction given by {@code step}, or a position
+   * outside {@code content} if there is none.</p>
+   */
+  private static int nextLiteral(List<HtmlEntity> content, int index, int step){
+    do{
+      index += step;
+    } while(0 <= index && index < content.size() && !(content.get(index) instanceof CharLiteral));
+    return index;
+  }
+  
+  /**
+   * <p>A compiled trie of one side of all the patterns. Node 0 is the root. Each node has
+   * literal edges, sorted by character, and at most one edge for each of the three wildcard
+   * classes.</p>
+   */
+  private static class Trie{
+    
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] wordEdge;
+    private final int[] nonWordEdge;
+    private final int[] alphaEdge;
+    
+    /**
+     * <p>{@code accepts[node]} has a bit set for each pattern whose side ends at
+     * {@code node}.</p>
+     */
+    private final long[][] accepts;
+    
+    private Trie(
+        char[][] edgeChars,
+        int[][] edgeTargets,
+        int[] wordEdge,
+        int[] nonWordEdge,
+        int[] alphaEdge,
+        long[][] accepts){
+      
+      this.edgeChars = edgeChars;
+      this.edgeTargets = edgeTargets;
+      this.wordEdge = wordEdge;
+      this.nonWordEdge = nonWordEdge;
+      this.alphaEdge = alphaEdge;
+      this.accepts = accepts;
+    }
+    
+    /**
+     * <p>Runs this automaton over the literal characters of {@code content} beyond
+     * {@code index} in the direction given by {@code step}, until no state is active, and
+     * returns the set of patterns whose side was matched.</p>
+     * @param content a list of HtmlEntity
+     * @param index the position in {@code content} of the right single quote
+     * @param step -1 to walk backward, 1 to walk forward
+     * @return a bit set of the patterns whose side was matched
+     */
+    private long[] run(List<HtmlEntity> content, int index, int step){
+      long[] result = new long[accepts[0].length];
+      
+      int[] active = new int[accepts.length];
+      int[] next = new int[accepts.length];
+      int activeCount = 1;
+      active[0] = 0;
+      accept(result, 0);
+      
+      while(activeCount > 0){
+        index = nextLiteral(content, index, step);
+        char c = characterAt(content, index);
+        char lower = Character.toLowerCase(c);
+        boolean isWord = c != NONE && Phrase.isPhraseChar(c);
+        boolean isAlpha = isWord && isAlphabetical(c);
+        
+        int nextCount = 0;
+        for(int a = 0; a < activeCount; a++){
+          int node = active[a];
+          
+          int literal = literalEdge(node, lower);
+          if(literal >= 0){
+            next[nextCount++] = literal;
+          }
+          if(isWord && wordEdge[node] >= 0){
+            next[nextCount++] = wordEdge[node];
+          }
+          if(!isWord && nonWordEdge[node] >= 0){
+            next[nextCount++] = nonWordEdge[node];
+          }
+          if(isAlpha && alphaEdge[node] >= 0){
+            next[nextCount++] = alphaEdge[node];
+          }
+        }
+        
+        for(int a = 0; a < nextCount; a++){
+          accept(result, next[a]);
+        }
+        
+        int[] swap = active;
+        active = next;
+        next = swap;
+        activeCount = nextCount;
+      }
+      
+      return result;
+    }
+    
+    private void accept(long[] result, int node){
+      long[] bits = accepts[node];
+      for(int i = 0; i < bits.length; i++){
+        result[i] |= bits[i];
+      }
+    }
+    
+    private int literalEdge(int node, char c){
+      char[] chars = edgeChars[node];
+      int lo = 0;
+      int hi = chars.length - 1;
+      while(lo <= hi){
+        int mid = (lo + hi) >>> 1;
+        if(chars[mid] < c){
+          lo = mid + 1;
+        } else if(chars[mid] > c){
+          hi = mid - 1;
+        } else{
+          return edgeTargets[node][mid];
+        }
+      }
+      return -1;
+    }
+  }
+  
+  /**
+   * <p>Accumulates one side of the patterns as a trie of mutable nodes and then compiles it into
+   * a {@link Trie Trie}.</p>
+   */
+  private static class TrieBuilder{
+    
+    private final int words;
+    private final List<Map<Character, Integer>> edges = new ArrayList<>();
+    private final List<long[]> accepts = new ArrayList<>();
+    
+    private TrieBuilder(int words){
+      this.words = words;
+      newNode();
+    }
+    
+    private int newNode(){
+      edges.add(new HashMap<>());
+      accepts.add(new long[words]);
+      return edges.size() - 1;
+    }
+    
+    private void add(String side, int id){
+      int node = 0;
+      for(int i = 0; i < side.length(); i++){
+        char c = side.charAt(i);
+        Integer target = edges.get(node).get(c);
+        if(target == null){
+          target = newNode();
+          edges.get(node).put(c, target);
+        }
+        node = target;
+      }
+      accepts.get(node)[id / Long.SIZE] |= 1L << (id % Long.SIZE);
+    }
+    
+    private Trie build(){
+      int size = edges.size();
+      char[][] edgeChars = new char[size][];
+      int[][] edgeTargets = new int[size][];
+      int[] wordEdge = new int[size];
+      int[] nonWordEdge = new int[size];
+      int[] alphaEdge = new int[size];
+      
+      for(int node = 0; node < size; node++){
+        Map<Character, Integer> out = new HashMap<>(edges.get(node));
+        wordEdge[node] = orNone(out.remove(WORD_CHAR));
+        nonWordEdge[node] = orNone(out.remove(NON_WORD_CHAR));
+        alphaEdge[node] = orNone(out.remove(ALPHA_CHAR));
+        
+        char[] chars = new char[out.size()];
+        int i = 0;
+        for(char c : out.keySet()){
+          chars[i++] = c;
+        }
+        Arrays.sort(chars);
+        
+        int[] targets = new int[chars.length];
+        for(i = 0; i < chars.length; i++){
+          targets[i] = out.get(chars[i]);
+        }
+        
+        edgeChars[node] = chars;
+        edgeTargets[node] = targets;
+      }
+      
+      return new Trie(
+          edgeChars,
+          edgeTargets,
+          wordEdge,
+          nonWordEdge,
+          alphaEdge,
+          accepts.toArray(new long[size][]));
+    }
+    
+    private static int orNone(Integer target){
+      return target == null
+          ? -1
+          : target;
+    }
+  }
+}
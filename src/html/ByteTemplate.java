@@ -0,0 +1,119 @@
+package html;
+
+import common.Utf8Sink;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>A fixed piece of text, encoded as UTF-8 once, with numbered slots into which a different
+ * value can be put each time the text is written. Writing the text is a few array copies: the
+ * fixed bytes between the slots and the bytes of the slot values.</p>
+ */
+final class ByteTemplate {
+  
+  /**
+   * <p>The char that marks slot 0 in the text given to {@link #compile(String) compile}. Slot
+   * {@code n} is marked by {@code (char) (SLOT_MARK + n)}.</p>
+   */
+  static final char SLOT_MARK = '\u0001';
+  
+  /**
+   * <p>The most slots a template can have. The chars marking them are control characters that
+   * never occur in the text of a chapter.</p>
+   */
+  static final int MAX_SLOTS = 8;
+  
+  /**
+   * <p>Is told where in the output each slot value is written.</p>
+   */
+  @FunctionalInterface
+  interface SlotRecorder{
+    void record(int slot, long position, int length);
+  }
+  
+  /**
+   * <p>The fixed parts of the text: {@code parts[i]} precedes the {@code i}-th slot occurring in
+   * the text, and the last part follows the last slot.</p>
+   */
+  private final byte[][] parts;
+  
+  /**
+   * <p>{@code slots[i]} is the number of the slot occurring after {@code parts[i]}.</p>
+   */
+  private final int[] slots;
+  
+  private ByteTemplate(byte[][] parts, int[] slots){
+    this.parts = parts;
+    this.slots = slots;
+  }
+  
+  /**
+   * <p>Returns a ByteTemplate of {@code marked}, in which each occurrence of a char
+   * {@code (char) (SLOT_MARK + n)} for {@code n} less than {@link #MAX_SLOTS MAX_SLOTS} is slot
+   * {@code n}. A slot may occur any number of times.</p>
+   * @param marked the text of the template with its slots marked
+   * @return a ByteTemplate of {@code marked}
+   */
+  static ByteTemplate compile(String marked){
+    List<byte[]> parts = new ArrayList<>();
+    List<Integer> slots = new ArrayList<>();
+    
+    int from = 0;
+    for(int i = 0; i < marked.length(); i++){
+      int slot = marked.charAt(i) - SLOT_MARK;
+      if(0 <= slot && slot < MAX_SLOTS){
+        parts.add(marked.substring(from, i).getBytes(StandardCharsets.UTF_8));
+        slots.add(slot);
+        from = i + 1;
+      }
+    }
+    parts.add(marked.substring(from).getBytes(StandardCharsets.UTF_8));
+    
+    return new ByteTemplate(
+        parts.toArray(new byte[parts.size()][]), 
+        slots.stream().mapToInt(Integer::intValue).toArray());
+  }
+  
+  /**
+   * <p>Returns the marker for slot {@code n}, to be put in the text given to
+   * {@link #compile(String) compile}.</p>
+   * @param n the number of a slot
+   * @return the marker for slot {@code n}
+   */
+  static String slot(int n){
+    return String.valueOf((char) (SLOT_MARK + n));
+  }
+  
+  /**
+   * <p>Writes this template to {@code out} with {@code values[n]} in slot {@code n}.</p>
+   * @param out the destination of the text
+   * @param values the UTF-8 encoded values of the slots
+   * @throws IOException if {@code out} cannot be written
+   */
+  void write(Utf8Sink out, byte[][] values) throws IOException{
+    write(out, values, null);
+  }
+  
+  /**
+   * <p>Writes this template to {@code out} with {@code values[n]} in slot {@code n}, telling
+   * {@code recorder} the {@link Utf8Sink#position() position} in {@code out} and the length of
+   * each slot value as it is written.</p>
+   * @param out the destination of the text
+   * @param values the UTF-8 encoded values of the slots
+   * @param recorder told where each slot value is written, or null
+   * @throws IOException if {@code out} cannot be written
+   */
+  void write(Utf8Sink out, byte[][] values, SlotRecorder recorder) throws IOException{
+    for(int i = 0; i < slots.length; i++){
+      out.write(parts[i]);
+      byte[] value = values[slots[i]];
+      if(recorder != null){
+        recorder.record(slots[i], out.position(), value.length);
+      }
+      out.write(value);
+    }
+    out.write(parts[slots.length]);
+  }
+}
@@ -1,5 +1,8 @@
 package html;
 
+import common.Utf8Sink;
+import java.io.IOException;
+
 /**
  * <p>Represents an HTML character code starting with an ampersand and ending with a semicolon.</p>
  */
@@ -13,6 +16,35 @@ public class CharCode extends HtmlEntity {
 	
 	public static final CharCode LT = new CharCode("lt");
 	public static final CharCode GT = new CharCode("gt");
+	public static final CharCode AMP = new CharCode("amp");
+	public static final CharCode NBSP_CODE = new CharCode(NBSP);
+	
+  /**
+   * <p>Returns the HtmlEntity to represent the HTML character reference whose text between the
+   * ampersand and the semicolon is {@code code}. References whose characters have to stay encoded
+   * for the file to render the same ({@literal <}, {@literal >}, {@literal &}, and non-breaking
+   * spaces) are represented by the standard named CharCode for that character, whether they are
+   * written by name or by number, and references that cannot be decoded are represented by a
+   * CharCode of their own. Every other reference is decoded into the
+   * {@link CharLiteral#of(char) CharLiteral} it stands for, so that the text of a file carries
+   * its real characters.</p>
+   * @param code the text of an HTML character reference between its ampersand and semicolon
+   * @return a CharCode or CharLiteral representing the reference {@code &code;}
+   */
+	public static HtmlEntity decode(String code){
+    int decoded = CharacterReferences.decode(code);
+    if(decoded == CharacterReferences.UNKNOWN){
+      return new CharCode(code);
+    }
+    for(CharCode kept : KEPT){
+      if(kept.decoded == decoded){
+        return kept;
+      }
+    }
+    return CharLiteral.of((char) decoded);
+	}
+	
+	private static final CharCode[] KEPT = {LT, GT, AMP, NBSP_CODE};
 	
   /**
    * <p>Returns true if the specified HTMLEntity is a {@code CharCode} and represents a
@@ -42,7 +74,23 @@ public class CharCode extends HtmlEntity {
      * ending semicolon
      */
 	public CharCode(String code) {
+		super(CODE);
 		this.code = code;
+		this.decoded = CharacterReferences.decode(code);
+	}
+	
+  /**
+   * <p>The character this {@code Code} stands for, or {@link CharacterReferences#UNKNOWN UNKNOWN}
+   * if it is not known.</p>
+   */
+	private final int decoded;
+	
+  /**
+   * <p>Returns the character this {@code Code} stands for, or
+   * {@link CharacterReferences#UNKNOWN UNKNOWN} if it is not known.</p>
+   */
+	int decoded(){
+		return decoded;
 	}
 	
     /**
@@ -62,6 +110,13 @@ public class CharCode extends HtmlEntity {
 		return START+code+END;
 	}
 	
+	@Override
+	public void write(Utf8Sink out) throws IOException{
+		out.write(START);
+		out.write(code);
+		out.write(END);
+	}
+	
   /**
    * <p>The character that begins an html character code in an html document.</p>
    */
@@ -73,21 +128,12 @@ public class CharCode extends HtmlEntity {
 	public static final char END = ';';
 	
   /**
-   * <p>Returns true if this Code is equivalent to the specified literal char, false
-   * otherwise.</p> <p>Always returns false. This is a placeholder in case it becomes necessary to
-   * account for some literal characters in html book and chapter files by representing them with
-   * character codes instead of literally.</p>
+   * <p>Returns true if this Code stands for the specified literal char, false otherwise.</p>
    * @param c the literal character to be tested for equivalency with this Code
-   * @return true if this Code is equivalent to the specified literal char, false otherwise.
+   * @return true if this Code stands for {@code c}, false otherwise.
    */
 	public boolean isEquivalent(char c){
-		/*
-     * It may be necessary in the future to include a detailed test for whether a literal char 
-     * is equivalent to a given Code, but for now, it is sufficient to say that no literal 
-     * character is equivalent to any Code, because only HTMLFile.match() calls this, and it 
-     * only needs to know so it can try to match characters.
-     */
-		return false;
+		return decoded == c;
 	}
 	
 	@Override
@@ -104,16 +150,15 @@ public class CharCode extends HtmlEntity {
 	@Override
   /**
    * <p>Returns a plaintext string equivalent to the character that this Code renders as in a
-   * browser. This is a single space, regardless of the value of this Code. This is a placeholder
-   * method in case it becomes necessary to render certain characters as html character codes in a
-   * file being read, in which case, this method would serve as a means of translating those codes
-   * back to characters.</p>
+   * browser: the character it stands for, or a single space if this Code is a non-breaking space
+   * or is not known.</p>
    * @return a plaintext string equivalent to the character that this Code renders as in a
    * browser.
    */
-	//XXX make this return meaningful results
 	public String txtString(){
-		return " ";
+		return decoded == CharacterReferences.UNKNOWN || NBSP.equals(code) 
+		    ? " " 
+		    : String.valueOf((char) decoded);
 	}
 	
 	@Override
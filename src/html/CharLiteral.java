@@ -1,6 +1,8 @@
 package html;
 
 import common.Files;
+import common.Utf8Sink;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -13,8 +15,14 @@ import text.Phrase;
  */
 public class CharLiteral extends HtmlEntity {
   
-  public static final CharLiteral RIGHT_SINGLE_QUOTE = new CharLiteral(Files.RIGHT_SINGLE_QUOTE);
-  public static final CharLiteral APOSTROPHE = new CharLiteral('\'');
+  /**
+   * <p>The shared instance of CharLiteral for each char, created the first time it is
+   * {@link #of(char) asked for}.</p>
+   */
+  private static final CharLiteral[] INTERNED = new CharLiteral[Character.MAX_VALUE + 1];
+  
+  public static final CharLiteral RIGHT_SINGLE_QUOTE = of(Files.RIGHT_SINGLE_QUOTE);
+  public static final CharLiteral APOSTROPHE = of('\'');
   
   /**
    * <p>The newline character '\n'.</p>
@@ -34,8 +42,25 @@ public class CharLiteral extends HtmlEntity {
    * @param c the literal character to wrap as an {@code HTMLEntity}.
    */
 	public CharLiteral(char c) {
+		super(LITERAL);
 		this.c = c;
 	}
+	
+  /**
+   * <p>Returns a CharLiteral wrapping {@code c}. CharLiterals are immutable, so a single shared
+   * instance serves every occurrence of {@code c} in every file, and a file's content costs one
+   * reference per character rather than one object.</p>
+   * @param c the literal character to wrap
+   * @return a CharLiteral wrapping {@code c}
+   */
+  public static CharLiteral of(char c){
+    CharLiteral result = INTERNED[c];
+    if(result == null){
+      //racing threads may each create one; any of them will do
+      INTERNED[c] = result = new CharLiteral(c);
+    }
+    return result;
+  }
 
   public static boolean is1(HtmlEntity h){
     return CharLiteral.class.isInstance(h) && ((CharLiteral)h).c == '1';
@@ -56,10 +81,19 @@ public class CharLiteral extends HtmlEntity {
         : new String(new char[]{c});
 	}
 	
+	@Override
+	public void write(Utf8Sink out) throws IOException{
+		if(c == NEW_LINE){
+			out.write(Files.NEW_LINE);
+		} else{
+			out.write(c);
+		}
+	}
+	
 	public static List<CharLiteral> asList(String s){
     List<CharLiteral> result = new ArrayList<>(s.length());
     for(int i = 0; i < s.length(); i++){
-      result.add(new CharLiteral(s.charAt(i)));
+      result.add(of(s.charAt(i)));
     }
     return result;
 	}
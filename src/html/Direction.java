@@ -1,44 +1,34 @@
 package html;
 
-import java.util.Collection;
-import java.util.function.BiPredicate;
-import java.util.function.IntUnaryOperator;
-
 /**
  * <p>Represents a direction of motion on a Collection. NEXT is motion to the right (increasing
- * index). PREV is motion to the left (decreasing index).</p> <p>{@link #crawlTest crawlTest} tests
- * that the specified position is not outside the bounds of the specified collection.</p> <p>For
- * rightward motion, {@code crawlTest} tests that the specified position is less than the size of
- * the specified collection. For leftward motion, {@code crawlTest} tests that the specified
- * position is non-negative and therefore not less than the minimum position in the collection.</p>
- * <p>{@link #apply apply} returns one more than the specified value for NEXT and one less than the
- * specified value in the case of PREV.</p>
+ * index). PREV is motion to the left (decreasing index).</p> <p>{@link #inBounds inBounds} tests
+ * that the specified position is not outside the bounds of a collection of the specified size.</p>
+ * <p>For rightward motion, {@code inBounds} tests that the specified position is less than the
+ * size. For leftward motion, {@code inBounds} tests that the specified position is non-negative
+ * and therefore not less than the minimum position in the collection.</p> <p>{@link #apply apply}
+ * returns one more than the specified value for NEXT and one less than the specified value in the
+ * case of PREV.</p> <p>Both operations work on primitive ints, so a loop that steps through a
+ * collection with them neither boxes its position nor calls through a functional interface.</p>
  */
 public enum Direction{
 	
-	NEXT(
-      (i) -> i + 1 , 
-      (i, c) -> i < c.size()), 
-	PREV(
-      (i) -> i - 1 , 
-      (i, c) -> i >= 0);
-	
-	private final IntUnaryOperator op;
+	NEXT(1), 
+	PREV(-1);
 	
-	private final BiPredicate<Integer, Collection<?>> crawlTest;
+	private final int step;
 	
-	private Direction(IntUnaryOperator op, BiPredicate<Integer, Collection<?>> crawlTest){
-		this.op = op;
-		this.crawlTest = crawlTest;
+	private Direction(int step){
+		this.step = step;
 	}
 	
     /**
-     * <p>Returns the operation that this Direction applies to an int position in a collection to
-     * generate the next position in the collection.</p>
-     * @return
+     * <p>Returns the amount by which this Direction changes a position: 1 for {@link #NEXT NEXT}
+     * and -1 for {@link #PREV PREV}.</p>
+     * @return the amount by which this Direction changes a position
      */
-	public IntUnaryOperator op(){
-		return op;
+	public int step(){
+		return step;
 	}
 	
     /**
@@ -49,19 +39,22 @@ public enum Direction{
      * @return the next position in a collection after the specified position {@code i}.
      */
 	public int apply(int i){
-		return op.applyAsInt(i);
+		return i + step;
 	}
 	
     /**
-     * <p>Returns true if the position in the specified collection is within the bounds of the
-     * collection. For NEXT, returns true if the specified position is less than the size of the
-     * specified collection, false otherwise. For PREV, returns true if the specified position is
+     * <p>Returns true if the position {@code i} is within the bounds of a collection of size
+     * {@code size} on the side toward which this Direction moves. For NEXT, returns true if
+     * {@code i} is less than {@code size}, false otherwise. For PREV, returns true if {@code i} is
      * greater than or equal to 0, the lower bound of any collection, false otherwise.</p>
-     * @param i a position in the collection.
-     * @param c the collection against whose bounds {@code i} is compared
-     * @return true if {@code i} is within the bounds of {@code c}, false otherwise.
+     * @param i a position in a collection
+     * @param size the size of the collection
+     * @return true if {@code i} is within the bounds of a collection of size {@code size}, false
+     * otherwise
      */
-	public boolean crawlTest(int i, Collection<?> c){
-		return crawlTest.test(i, c);
+	public boolean inBounds(int i, int size){
+		return step > 0 
+				? i < size 
+				: i >= 0;
 	}
 }
@@ -0,0 +1,81 @@
+package html;
+
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * <p>A stage in a streaming transformation of a sequence of HtmlEntity. An EntitySink accepts
+ * elements one at a time and passes the elements it produces on to the EntitySink downstream of
+ * it, so that a chain of EntitySinks transforms a whole sequence in a single pass without
+ * building an intermediate list between stages.</p> <p>Once every element has been accepted,
+ * {@link #end() end()} must be called so that stages holding elements back can release
+ * them.</p>
+ */
+abstract class EntitySink implements Consumer<HtmlEntity>{
+  
+  /**
+   * <p>The EntitySink to which this EntitySink passes the elements it produces, or null if this
+   * is the last stage.</p>
+   */
+  private final EntitySink downstream;
+  
+  /**
+   * <p>Constructs an EntitySink that passes the elements it produces to {@code downstream}.</p>
+   * @param downstream the next stage of the transformation
+   */
+  protected EntitySink(EntitySink downstream){
+    this.downstream = downstream;
+  }
+  
+  /**
+   * <p>Passes {@code h} to the next stage of the transformation.</p>
+   * @param h an element produced by this stage
+   */
+  protected void emit(HtmlEntity h){
+    downstream.accept(h);
+  }
+  
+  /**
+   * <p>Signals that every element of the sequence has been accepted. Stages that hold elements
+   * back emit them before this call is passed downstream.</p>
+   */
+  void end(){
+    if(downstream != null){
+      downstream.end();
+    }
+  }
+  
+  /**
+   * <p>Returns an EntitySink that ends a transformation by sending every element it accepts to
+   * {@code terminal}.</p>
+   * @param terminal the destination of the transformed sequence
+   * @return an EntitySink that sends every element it accepts to {@code terminal}
+   */
+  static EntitySink into(Consumer<? super HtmlEntity> terminal){
+    return new EntitySink(null){
+      @Override
+      public void accept(HtmlEntity h){
+        terminal.accept(h);
+      }
+    };
+  }
+  
+  /**
+   * <p>Returns an EntitySink that passes on to {@code downstream} only those elements for which
+   * {@code test} evaluates to true.</p>
+   * @param test the test an element must pass to be kept
+   * @param downstream the next stage of the transformation
+   * @return an EntitySink that passes on to {@code downstream} only those elements for which
+   * {@code test} evaluates to true
+   */
+  static EntitySink filter(Predicate<HtmlEntity> test, EntitySink downstream){
+    return new EntitySink(downstream){
+      @Override
+      public void accept(HtmlEntity h){
+        if(test.test(h)){
+          emit(h);
+        }
+      }
+    };
+  }
+}
@@ -5,23 +5,19 @@ import common.Files;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.OptionalInt;
 import java.util.Scanner;
 import java.util.Iterator;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.function.IntUnaryOperator;
+import java.util.function.IntPredicate;
 import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
-import text.Phrase;
 
 /**
  * <p>Represents an HTML file and provides some convenience methods for working with an HTML
@@ -35,6 +31,13 @@ public class HtmlBook extends HtmlFile{
    */
   private final File source;
   
+  /**
+   * <p>The version of the rules by which HtmlBooks are cleaned and split into chapters. Must be
+   * increased whenever a change to those rules changes the chapters produced from a book, so
+   * that chapters saved by an earlier version are not mistaken for current ones.</p>
+   */
+  public static final int CLEANING_VERSION = 4;
+  
   /**
    * <p>Constructs an HtmlBook representing the contents of the File {@code f}. Calls
    * {@link #HtmlBook(String,Scanner) this(String,Scanner)} using
@@ -63,29 +66,6 @@ public class HtmlBook extends HtmlFile{
     this.source = source;
   }
   
-  /**
-   * <p>Returns true if the underlying list contains a contiguous (ignoring Tags) region of
-   * literal characters starting at {@code index} which match the characters of {@code literal},
-   * false otherwise.</p>
-   * @param literal the literal text to be matched starting at {@code index} in the underlying
-   * list
-   * @param index the position in the underlying list starting at which {@code literal} is to be
-   * sought
-   * @return true if the underlying list contains a contiguous (ignoring Tags) region of literal
-   * characters starting at {@code index} which match the characters of {@code literal}, false
-   * otherwise.
-   */
-  private boolean hasLiteralAt(String literal, int index){
-    for(int i = 0; i < literal.length(); i++){
-      char c = literal.charAt(i);
-      if(!content.get(index).match(c)){
-        return false;
-      }
-      index = adjacentElement(index, HtmlBook::isCharacter, Direction.NEXT);
-    }
-    return true;
-  }
-  
   /**
    * <p>Returns true if this file contains the specified {@code literal} text starting at any
    * position after {@code start} and ending at any position before {@code end}, false
@@ -96,26 +76,31 @@ public class HtmlBook extends HtmlFile{
    * @return
    */
   private boolean hasLiteralBetween(String literal, int start, int end){
-    OptionalInt oi = IntStream.range(start + 1, end - literal.length())
-        .filter((i) -> hasLiteralAt(literal, i))
-        .findFirst();
-    return oi.isPresent();
+    return projection().indexOf(literal, start, end - literal.length()) >= 0;
   }
   
-  private int adjacentElement(
-        Predicate<Integer> condition, 
-        Direction direction, 
-        int startPosition){
-    
-    for(int i = direction.apply(startPosition); 
-        direction.crawlTest(i, content); 
-        i = direction.apply(i)){
-      
-      if(condition.test(i)){
-        return i;
-      }
+  /**
+   * <p>The {@link TextProjection text-only projection} of the underlying list, or null if it has
+   * not been built yet.</p>
+   */
+  private TextProjection projection = null;
+  
+  /**
+   * <p>The value of {@link #modCount modCount} when {@link #projection projection} was built.</p>
+   */
+  private int projectionModCount;
+  
+  /**
+   * <p>Returns a {@link TextProjection text-only projection} of the underlying list, building a
+   * new one if the underlying list has been modified since the last one was built.</p>
+   * @return a text-only projection of the underlying list
+   */
+  private TextProjection projection(){
+    if(projection == null || projectionModCount != modCount){
+      projection = new TextProjection(content);
+      projectionModCount = modCount;
     }
-    return BEFORE_BEGINNING;
+    return projection;
   }
   
   /**
@@ -125,10 +110,7 @@ public class HtmlBook extends HtmlFile{
    * @param end the exclusive upper bound of the region to be removed from the underlying list
    */
   private void removeAll(int start, int end){
-    List<HtmlEntity> front = content.subList(0,start);
-    List<HtmlEntity> back = content.subList(end, content.size());
-    front.addAll(back);
-    content = new ArrayList<>(front);
+    content.subList(start, end).clear();
     modCount++;
   }
   
@@ -138,8 +120,7 @@ public class HtmlBook extends HtmlFile{
    * @param start the inclusive lower bound of the region of the underlying list to be removed
    */
   private void removeAll(int start){
-    content = new ArrayList<>(content.subList(0, start));
-    modCount++;
+    removeAll(start, content.size());
   }
   
   /**
@@ -168,11 +149,11 @@ public class HtmlBook extends HtmlFile{
     
     final String type = t.getType();
     final Predicate<HtmlEntity> isTagOfType = 
-        (h) -> Tag.class.isInstance(h) && ((Tag)h).getType().equals(type);
+        (h) -> ((Tag)h).getType().equals(type);
     int tagIndex = startPoint;
     
     for(int depth = 1; depth > 0 && 0 <= tagIndex && tagIndex < content.size() - 1;){
-      tagIndex = adjacentElement(tagIndex, isTagOfType, Direction.NEXT);
+      tagIndex = adjacentElement(tagIndex, HtmlEntity.TAG, isTagOfType, Direction.NEXT);
       Tag someTag = (Tag) content.get(tagIndex);
       depth += someTag.isOpening() 
           ? INCREASE_DEPTH 
@@ -188,7 +169,9 @@ public class HtmlBook extends HtmlFile{
    * <p>Turns the content scanned by {@code s} into a list of HtmlEntity. Each tag in the source 
    * beginning and ending with {@literal <} and {@literal >} respectively is represented by a Tag.
    * Each character code in the source beginning and ending with {@literal &} and {@literal ;} 
-   * respectively is represented by a CharCode.</p>
+   * respectively is {@link CharCode#decode(String) decoded} into the CharLiteral it stands for,
+   * unless rendering needs its original encoding, in which case it is represented by a
+   * CharCode.</p>
    * @param s a Scanner that produces the literal text of an HTML file
    * @return a {@literal List<HTMLEntity>} representing the contents of the body scanned by
    * {@code s}
@@ -209,7 +192,7 @@ public class HtmlBook extends HtmlFile{
           multiCharHandler = risingCounterparts.get(c);
           tagCode = new StringBuilder();
         } else{
-          result.add(new CharLiteral(c));
+          result.add(CharLiteral.of(c));
         }
       } else if(multiCharHandler.getTerminalChar().equals(c)){
         result.add(multiCharHandler.entity(tagCode));
@@ -224,21 +207,27 @@ public class HtmlBook extends HtmlFile{
   }
   
   private static final Map<Character, MultiChar> risingCounterparts = Stream.of(MultiChar.values())
-      .collect(Collectors.toMap(MultiChar::getTerminalChar, Function.identity()));
+      .collect(Collectors.toMap(MultiChar::getRisingChar, Function.identity()));
   
   private static enum MultiChar{
     
-    TAG('>', Tag::new), 
-    CODE(';', CharCode::new);
+    TAG(Tag.START_CHAR, Tag.END_CHAR, Tag::new), 
+    CODE(CharCode.START, CharCode.END, CharCode::decode);
     
+    private final Character rising;
     private final Character ch;
     private final Function<String, HtmlEntity> func;
     
-    private MultiChar(Character ch, Function<String, HtmlEntity> func){
+    private MultiChar(Character rising, Character ch, Function<String, HtmlEntity> func){
+      this.rising = rising;
       this.ch = ch;
       this.func = func;
     }
     
+    Character getRisingChar(){
+      return rising;
+    }
+    
     Character getTerminalChar(){
       return ch;
     }
@@ -249,19 +238,20 @@ public class HtmlBook extends HtmlFile{
   }
   
   /**
-   * <p>Returns a sublist of the list underlying this object, whose bounds are indicated by the
-   * first and second entries in {@code bounds}.</p>
+   * <p>Returns a {@link PieceTable#appendView(List,int,int) view} of the region of the list
+   * underlying this object whose bounds are indicated by the first and second entries in
+   * {@code bounds}.</p>
    * @param bounds an int array whose first entry is the inclusive lower bound of the region to be
    * returned and whose second entry is the exclusive upper bound of the region to be returned.
-   * @return a sublist of the list underlying this object, whose bounds are indicated by the first
-   * and second entries in {@code bounds}
+   * @return a view of the region of the list underlying this object whose bounds are indicated
+   * by the first and second entries in {@code bounds}
    */
   private List<HtmlEntity> section(int[] bounds){
     return section(bounds[PARAGRAPH_START_BOUND_INDEX], bounds[PARAGRAPH_END_BOUND_INDEX]);
   }
   
   private List<HtmlEntity> section(int lo, int hi){
-    return content.subList(lo, hi);
+    return new PieceTable().appendView(content, lo, hi);
   }
   
   private List<HtmlEntity> section(int lo){
@@ -336,6 +326,7 @@ public class HtmlBook extends HtmlFile{
       concurrentModificationCheck();
       return BEFORE_BEGINNING != adjacentElement(
           position, 
+          HtmlEntity.TAG, 
           HtmlBook::isParagraphishOpen, 
           Direction.NEXT);
     }
@@ -351,7 +342,11 @@ public class HtmlBook extends HtmlFile{
      */
     public int[] next(){
       concurrentModificationCheck();
-      int start = adjacentElement(position, HtmlBook::isParagraphishOpen, Direction.NEXT);
+      int start = adjacentElement(
+          position, 
+          HtmlEntity.TAG, 
+          HtmlBook::isParagraphishOpen, 
+          Direction.NEXT);
       int end = closingMatch(start);
       int[] result = {start, end + 1};
       position = end;
@@ -374,11 +369,64 @@ public class HtmlBook extends HtmlFile{
     }
   }
   
+  /**
+   * <p>Cleans this HtmlBook and splits it into chapters, returning them all at once.</p>
+   * @return the chapters of this HtmlBook, in order
+   * @see #cleanAndSplit(Consumer)
+   */
   public Collection<HtmlChapter> cleanAndSplit(){
-    Stream.of(Operation.values())
-        .filter((op) -> !op.isDone(this))
-        .forEach((op) -> op.operate(this));
-    return splitChapters();
+    List<HtmlChapter> result = new ArrayList<>();
+    cleanAndSplit(result::add);
+    return result;
+  }
+  
+  /**
+   * <p>Cleans this HtmlBook and splits it into chapters, passing each chapter to {@code sink}, in
+   * order, as soon as it has been cut from the book, so that work on the early chapters can
+   * proceed while the rest of the book is still being split.</p>
+   * @param sink the destination of the chapters of this HtmlBook
+   */
+  public void cleanAndSplit(Consumer<? super HtmlChapter> sink){
+    List<Operation> fused = new ArrayList<>();
+    for(Operation op : Operation.values()){
+      if(op.isDone(this)){
+        continue;
+      }
+      if(op.isStreaming()){
+        fused.add(op);
+      } else{
+        transform(fused);
+        fused.clear();
+        op.operate(this);
+      }
+    }
+    transform(fused);
+    splitChapters(sink);
+  }
+  
+  /**
+   * <p>Runs the specified {@link Operation#isStreaming() streaming} Operations fused together in
+   * a single pass over the underlying list, writing their combined output into one new list that
+   * replaces the underlying list.</p>
+   * @param ops streaming Operations in the order in which they would otherwise be performed
+   */
+  private void transform(List<Operation> ops){
+    if(ops.isEmpty()){
+      return;
+    }
+    
+    List<HtmlEntity> result = new ArrayList<>(content.size());
+    EntitySink sink = EntitySink.into(result::add);
+    for(int i = ops.size() - 1; i >= 0; i--){
+      sink = ops.get(i).stage(sink);
+    }
+    
+    content.forEach(sink);
+    sink.end();
+    
+    content = new PieceTable(result);
+    modCount++;
+    ops.forEach((op) -> op.setter.accept(this));
   }
   
   private boolean newlinePDone = false;
@@ -386,6 +434,12 @@ public class HtmlBook extends HtmlFile{
   private boolean clearFrontAndBackMatterDone = false;
   private boolean swapApostrophesDone = false;
   
+  /**
+   * <p>The cleaning operations applied to an HtmlBook before it is split into chapters. An
+   * Operation is either streaming, transforming the underlying list one element at a time as an
+   * {@link EntitySink EntitySink} stage so that consecutive streaming Operations can be fused
+   * into one pass, or whole-book, working on the entire underlying list in place.</p>
+   */
   private static enum Operation{
     NEWLINE_P(
         (h) -> h.newlinePDone, 
@@ -405,15 +459,28 @@ public class HtmlBook extends HtmlFile{
         (h) -> h.swapApostrophesDone = true);
     
     private final Predicate<HtmlBook> test;
+    private final UnaryOperator<EntitySink> stage;
     private final Consumer<HtmlBook> operation;
     private final Consumer<HtmlBook> setter;
     
+    private Operation(
+        Predicate<HtmlBook> test, 
+        UnaryOperator<EntitySink> stage, 
+        Consumer<HtmlBook> setter){
+      
+      this.test = test;
+      this.stage = stage;
+      this.operation = null;
+      this.setter = setter;
+    }
+    
     private Operation(
         Predicate<HtmlBook> test, 
         Consumer<HtmlBook> operation, 
         Consumer<HtmlBook> setter){
       
       this.test = test;
+      this.stage = null;
       this.operation = operation;
       this.setter = setter;
     }
@@ -422,53 +489,111 @@ public class HtmlBook extends HtmlFile{
       return test.test(h);
     }
     
+    /**
+     * <p>Returns true if this Operation transforms the underlying list one element at a time, 
+     * false if it works on the entire underlying list at once.</p>
+     * @return true if this Operation transforms the underlying list one element at a time
+     */
+    boolean isStreaming(){
+      return stage != null;
+    }
+    
+    /**
+     * <p>Returns this streaming Operation's stage, passing its output to {@code downstream}.</p>
+     * @param downstream the next stage of the transformation
+     * @return this streaming Operation's stage, passing its output to {@code downstream}
+     */
+    EntitySink stage(EntitySink downstream){
+      return stage.apply(downstream);
+    }
+    
     void operate(HtmlBook h){
       operation.accept(h);
       setter.accept(h);
     }
   }
   
-  private void newlineP(){
-    List<HtmlEntity> newContent = new ArrayList<>(content.size());
-    for(HtmlEntity h : content){
-      if(Tag.isPOpen(h)){
-        newContent.addAll(CharLiteral.NEW_LINE_LITERAL);
+  /**
+   * <p>Returns a stage that adds a newline before every opening "p" tag.</p>
+   * @param downstream the next stage of the transformation
+   * @return a stage that adds a newline before every opening "p" tag
+   */
+  private static EntitySink newlineP(EntitySink downstream){
+    return new EntitySink(downstream){
+      @Override
+      public void accept(HtmlEntity h){
+        if(Tag.isPOpen(h)){
+          CharLiteral.NEW_LINE_LITERAL.forEach(this::emit);
+        }
+        emit(h);
       }
-      newContent.add(h);
-    }
-    content = newContent;
+    };
   }
   
-  private void clearExcessStructure(){
-    emptyPs().stream().forEach((i) -> {
-      content.set(i, null);
-      content.set(i + 1, null);
-    });
-    content = content.stream()
-        .filter(Objects::nonNull)
-        .filter(Tag::notDiv)
-        .filter(Tag::notBlockquote)
-        .filter(Tag::notImg)
-        .filter(CharCode::notNbsp)
-        .collect(Collectors.toList());
+  /**
+   * <p>Returns a stage that removes empty paragraphs and then removes divs, blockquotes, images, 
+   * and non-breaking spaces.</p>
+   * @param downstream the next stage of the transformation
+   * @return a stage that removes empty paragraphs, divs, blockquotes, images, and non-breaking 
+   * spaces
+   */
+  private static EntitySink clearExcessStructure(EntitySink downstream){
+    return new EmptyPRemover(
+        EntitySink.filter(
+            (h) -> Tag.notDiv(h) 
+                && Tag.notBlockquote(h) 
+                && Tag.notImg(h) 
+                && CharCode.notNbsp(h), 
+            downstream));
   }
   
   /**
-   * returns a list of the indices in this HtmlBook of the opening paragraph tag of an empty 
-   * paragraph
-   * @return
+   * <p>A stage that removes each opening "p" tag that is immediately followed by a closing "p" 
+   * tag, along with that closing tag. An opening "p" tag is held back until the element after it 
+   * is seen.</p>
    */
-  private List<Integer> emptyPs(){
-    return IntStream.range(0, content.size() - 1)
-        .filter((i) -> Tag.isPOpen(content.get(i)))
-        .filter((i) -> Tag.isPClose(content.get(i + 1)))
-        .mapToObj(Integer::new)
-        .collect(Collectors.toList());
+  private static class EmptyPRemover extends EntitySink{
+    
+    private HtmlEntity heldPOpen = null;
+    
+    private EmptyPRemover(EntitySink downstream){
+      super(downstream);
+    }
+    
+    @Override
+    public void accept(HtmlEntity h){
+      if(heldPOpen != null){
+        HtmlEntity pOpen = heldPOpen;
+        heldPOpen = null;
+        if(Tag.isPClose(h)){
+          return;
+        }
+        emit(pOpen);
+      }
+      
+      if(Tag.isPOpen(h)){
+        heldPOpen = h;
+      } else{
+        emit(h);
+      }
+    }
+    
+    @Override
+    void end(){
+      if(heldPOpen != null){
+        emit(heldPOpen);
+        heldPOpen = null;
+      }
+      super.end();
+    }
   }
   
   private void clearFrontAndBackMatter(){
-    handleNovels();
-    handleNovellas();
+    if(bookData().isNovel()){
+      handleNovels();
+    } else{
+      handleNovellas();
+    }
   }
   
   private void handleNovels(){
@@ -481,14 +606,13 @@ public class HtmlBook extends HtmlFile{
   
   private int prologueTitleBlock(){
     String firstWords = NOVEL_FIRST_WORDS.get(source.getName());
-    Predicate<Integer> hasFirstWordsAt = (i) -> hasLiteralAt(firstWords, i);
     
-    int chapterStartIndex = adjacentElement(hasFirstWordsAt, Direction.NEXT, BEFORE_BEGINNING);
+    int chapterStartIndex = projection().indexOf(firstWords, BEFORE_BEGINNING);
     
-    Predicate<Integer> isPrologueBlock = 
+    IntPredicate isPrologueBlock = 
         (i) -> isParagraphishOpen(content.get(i)) 
             && hasLiteralBetween("PROLOGUE", i, closingMatch(i));
-    int pLocation = adjacentElement(isPrologueBlock, Direction.PREV, chapterStartIndex);
+    int pLocation = adjacentIndex(chapterStartIndex, isPrologueBlock, Direction.PREV);
     
     return pLocation - 1; //MAGIC
   }
@@ -496,10 +620,12 @@ public class HtmlBook extends HtmlFile{
   private int backMatterStart(){
     String lastWords = NOVEL_LAST_WORDS.get(source.getName());
     
-    Predicate<Integer> hasLastWordsAt = (i) -> hasLiteralAt(lastWords, i);
-    
-    int textIndex = adjacentElement(hasLastWordsAt, Direction.PREV, content.size());
-    int pIndex = adjacentElement(textIndex, HtmlBook::isParagraphishOpen, Direction.NEXT);
+    int textIndex = projection().lastIndexOf(lastWords, content.size());
+    int pIndex = adjacentElement(
+        textIndex, 
+        HtmlEntity.TAG, 
+        HtmlBook::isParagraphishOpen, 
+        Direction.NEXT);
     
     return pIndex;
   }
@@ -521,11 +647,10 @@ public class HtmlBook extends HtmlFile{
    */
   private int firstWordsP(){
     String firstWords = NOVELLA_FIRST_WORDS.get(source.getName());
-    Predicate<Integer> predicate = (i) -> hasLiteralAt(firstWords, i);
     
-    int literalIndex = adjacentElement(predicate, Direction.NEXT, BEFORE_BEGINNING);
+    int literalIndex = projection().indexOf(firstWords, BEFORE_BEGINNING);
     
-    return adjacentElement(literalIndex, Tag::isPOpen, Direction.PREV);
+    return adjacentElement(literalIndex, HtmlEntity.TAG, Tag::isPOpen, Direction.PREV);
   }
   
   /**
@@ -537,26 +662,26 @@ public class HtmlBook extends HtmlFile{
    */
   private int lastWordsP(){
     String lastWords = NOVELLA_LAST_WORDS.get(source.getName());
-    Predicate<Integer> predicate = (i) -> hasLiteralAt(lastWords, i);
     
-    int literalIndex = adjacentElement(predicate, Direction.PREV, content.size());
+    int literalIndex = projection().lastIndexOf(lastWords, content.size());
     
-    return adjacentElement(literalIndex, Tag::isPClose, Direction.NEXT);
+    return adjacentElement(literalIndex, HtmlEntity.TAG, Tag::isPClose, Direction.NEXT);
   }
   
   private void swapApostrophes(){
-    IntStream.range(0, content.size())
-        .filter((i) -> CharLiteral.RIGHT_SINGLE_QUOTE.equals(content.get(i)))
-        .filter((i) -> shouldChangeCharacter(i))
-        .forEach((i) -> content.set(i, CharLiteral.APOSTROPHE));
-  }
-  
-  private boolean shouldChangeCharacter(int i){
-    return PATTERNS.parallelStream()
-        .anyMatch((pattern) -> pattern.match(this, i));
+    for(int i = 0; i < content.size(); i++){
+      if(APOSTROPHES.matches(content, i)){
+        content.set(i, CharLiteral.APOSTROPHE);
+      }
+    }
   }
   
-  private static final List<ApostrophePattern> PATTERNS = Stream.of(
+  /**
+   * <p>Patterns of characters around an apostrophe, compiled into one automaton, that identify
+   * the right single quotes in the text of ASOIAF that should be ordinary apostrophes. See
+   * {@link ApostropheAutomaton ApostropheAutomaton} for the meaning of the wildcards.</p>
+   */
+  private static final ApostropheAutomaton APOSTROPHES = Stream.of(
       "@'@",  //everything from I'm to shouldn't've
       "&o'&", //of
       "&t'&", //to
@@ -658,164 +783,7 @@ public class HtmlBook extends HtmlFile{
       "the diggers' eyes were",
       "my sons' things",
       "&lil'&")
-      .map(ApostrophePattern::new)
-      .collect(Collectors.toList());
-  
-  /**
-   * <p>Represents a pattern of characters around an apostrophe, meant for use in determining
-   * which instances of a right single quote in the text of ASOIAF should be ordinary apostrophes
-   * instead.</p>
-   */
-  private static class ApostrophePattern{
-    
-    /**
-     * <p>Used in a string sent to ApoPattern's constructor, this represents any
-     * {@link #isWordChar(Character) word character}. It is an asterisk: {@value}</p>
-     */
-    private static final char WORD_CHAR = '*';
-    
-    /**
-     * <p>Used in a string sent to ApoPattern's constructor, this represents any
-     * {@link #isWordChar(Character) non-word character}. It is an ampersand: {@value}</p>
-     */
-    private static final char NON_WORD_CHAR = '&';
-    
-    /**
-     * <p>Used in a string sent to ApoPattern's constructor, this represents any
-     * {@link #isAlphabetical(Character) alphabetic character}. It is an at sign: {@value}</p>
-     */
-    private static final char ALPHA_CHAR = '@';
-    
-    /**
-     * <p>A list of the characters from the string used to construct this ApoPatern prior to the
-     * apostrophe, in reverse order. For example, sending "ab'cd" to the constructor makes
-     * {@code before} equivalent to
-     * {@code before = new ArrayList<>(); before.add(new Character('b')); before.add(new Character('a'));}</p>
-     */
-    private List<Character> before;
-    
-    /**
-     * <p>A list of the characters from the string used to construct this ApoPatern after to the
-     * apostrophe. For example, sending "ab'cd" to the constructor makes {@code before}
-     * equivalent to
-     * {@code after = new ArrayList<>(); after.add(new Character('c')); after.add(new Character('d'));}</p>
-     */
-    private List<Character> after;
-    
-    /**
-     * <p>Constructs an ApoPattern based on the specified string.</p>
-     * @param s a string containing an apostrophe used to specify characters around an
-     * apostrophe
-     */
-    private ApostrophePattern(String s){
-        s = s.toLowerCase();
-        int index = s.indexOf(CharLiteral.APOSTROPHE.c);
-        before = new ArrayList<>();
-        after = IntStream.range(index + 1, s.length())
-                .mapToObj(s::charAt)
-                .collect(Collectors.toList());
-        for(int i = index - 1; i >= 0; i--){
-            before.add(s.charAt(i));
-        }
-    }
-    
-    private boolean match(HtmlBook h, int index){
-        return CharLiteral.RIGHT_SINGLE_QUOTE.equals(h.content.get(index)) 
-                && Stream.of(Side.values())
-                        .allMatch((side) -> side.match(ApostrophePattern.this, h, index));
-    }
-    
-    private static enum Side{
-      
-      BEFORE((ap) -> ap.before, (i) -> i - 1), 
-      AFTER ((ap) -> ap.after,  (i) -> i + 1);
-      
-      private final Function<ApostrophePattern, List<Character>> listFunc;
-      private final IntUnaryOperator nextInt;
-      
-      private Side(
-          Function<ApostrophePattern, List<Character>> listFunc, 
-          IntUnaryOperator nextInt){
-        
-        this.listFunc = listFunc;
-        this.nextInt = nextInt;
-      }
-      
-      boolean match(ApostrophePattern pattern, HtmlBook h, int a){
-        for(char c : listFunc.apply(pattern)){
-          a = nextInt(a, h);
-          if(!ApostrophePattern.match(c, characterAt(a, h))){
-            return false;
-          }
-        }
-        return true;
-      }
-      
-      private int nextInt(int a, HtmlBook h){
-        do{
-          a = nextInt.applyAsInt(a);
-          
-          //the while test will throw an exception if a is not in range, but a is tested 
-          //for range in Side.match() before being sent to this method; so, that problem 
-          //should never occur
-        } while(!(h.content.get(a) instanceof CharLiteral));
-        return a;
-      }
-    }
-    
-    /**
-     * If the thing in {@code h} at the specified {@code index} is an actual character, then 
-     * return that character, otherwise return null.
-     * @param index
-     * @param h
-     * @return the literal character in {@code h} at the specified {@code index} if one exists 
-     * there, otherwise {@code null}
-     */
-    private static Character characterAt(int index, HtmlBook h){
-      if(0 <= index && index < h.content.size()){
-        HtmlEntity ent = h.content.get(index);
-        if(ent instanceof CharLiteral){
-          CharLiteral cl = (CharLiteral) ent;
-          return cl.c;
-        }
-      }
-      return null;
-    }
-    
-    /**
-     * <p>Returns true if the character from a line of an HTML file matches the corresponding
-     * character from the string used to construct this ApoPattern, false otherwise.</p> <p>The
-     * special characters {@link #WORD_CHAR WORD_CHAR}, {@link #NON_WORD_CHAR NON_WORD_CHAR},
-     * and {@link #ALPHA_CHAR ALPHA_CHAR} in this instance's code initiate specific tests; all
-     * other characters are tested literally against the {@code fromFile} character.</p>
-     * @param fromInstanceCode a character from the string used to construct this ApoPattern
-     * @param fromFile a character from a line from an HTML file
-     * @return true if the character from a line of an HTML file matches the corresponding
-     * character from the string used to construct this ApoPattern, false otherwise
-     */
-    private static boolean match(Character fromInstanceCode, Character fromFile){
-      switch(fromInstanceCode){
-      case WORD_CHAR     : return Phrase.isPhraseChar(fromFile);
-      case NON_WORD_CHAR : return !Phrase.isPhraseChar(fromFile);
-      case ALPHA_CHAR    : return isAlphabetical(fromFile);
-      default            : return fromFile != null 
-          && fromInstanceCode.equals(Character.toLowerCase(fromFile)); 
-      }
-    }
-    
-    /**
-     * <p>Returns true if {@code c} is an alphabetical character, false otherwise.</p>
-     * @param c a character to be evaluated as alphabetical or not
-     * @return true if {@code c} is an alphabetical character, false otherwise
-     */
-    private static boolean isAlphabetical(Character c){
-      return c != null 
-          && !(c == CharLiteral.APOSTROPHE.c 
-              || c == '-' 
-              || ('0' <= c && c <= '9')) 
-          && Phrase.isPhraseChar(c);
-    }
-  }
+      .collect(Collectors.collectingAndThen(Collectors.toList(), ApostropheAutomaton::new));
   
   private static final Map<String, String> NOVEL_FIRST_WORDS = 
       BookData.words(BookData::isNovel, BookData::getFirstWords);
@@ -829,20 +797,33 @@ public class HtmlBook extends HtmlFile{
   private static final Map<String, String> NOVELLA_LAST_WORDS = 
       BookData.words(BookData::isNovella, BookData::getLastWords);
   
-  private Collection<HtmlChapter> splitChapters(){
-    return BookData
-        .valueOf(
-            source
-            .getName()
-            .substring(0, source.getName().length() - Files.HTML_EXT.length()))
+  private void splitChapters(Consumer<? super HtmlChapter> sink){
+    bookData()
         .getChapterizer()
-        .apply(this);
+        .accept(this, sink);
   }
   
-  public static Collection<HtmlChapter> chapterizeNovel(HtmlBook novel){
-    List<HtmlChapter> result = new ArrayList<>();
-    
-    List<HtmlEntity> buffer = new ArrayList<>();
+  /**
+   * <p>Returns the BookData for the book whose content this HtmlBook holds, as identified by the
+   * name of the {@link #source source} file.</p>
+   * @return the BookData for the book whose content this HtmlBook holds
+   */
+  private BookData bookData(){
+    return BookData.valueOf(
+        source
+        .getName()
+        .substring(0, source.getName().length() - Files.HTML_EXT.length()));
+  }
+  
+  /**
+   * <p>Splits {@code novel} into chapters at its title paragraphs, passing each chapter to
+   * {@code sink} as soon as the title paragraph of the next chapter or the end of the book shows
+   * where it ends.</p>
+   * @param novel a cleaned HtmlBook of a novel
+   * @param sink the destination of the chapters of {@code novel}
+   */
+  public static void chapterizeNovel(HtmlBook novel, Consumer<? super HtmlChapter> sink){
+    PieceTable buffer = new PieceTable();
     String chapterName = null;
     
     int writeCount = 0;
@@ -858,7 +839,7 @@ public class HtmlBook extends HtmlFile{
       if(isTitleParagraph(paragraph)){
         if(!buffer.isEmpty()){
           //dump the buffer
-          result.add(HtmlChapter.fromBuffer(
+          sink.accept(HtmlChapter.fromBuffer(
               novel.chapterFileName(writeCount, chapterName), 
               buffer));
           writeCount++;
@@ -866,20 +847,18 @@ public class HtmlBook extends HtmlFile{
         
         //new buffer
         chapterName = extractChapterTitle(paragraph);
-        buffer = new ArrayList<>();
+        buffer = new PieceTable();
       } else{
-        buffer.addAll(paragraph);
-        buffer.addAll(CharLiteral.NEW_LINE_LITERAL);
+        buffer.appendView(paragraph);
+        buffer.appendView(CharLiteral.NEW_LINE_LITERAL);
       }
     }
     
     //reached end of file
     //dump the buffer to a file
-    result.add(HtmlChapter.fromBuffer(
+    sink.accept(HtmlChapter.fromBuffer(
         novel.chapterFileName(writeCount, chapterName), 
         buffer));
-    
-    return result;
   }
   
   /**
@@ -953,22 +932,23 @@ public class HtmlBook extends HtmlFile{
     return result.toString();
   }
   
-  public static Collection<HtmlChapter> chapterizeNovella(HtmlBook novella){
-    return new ArrayList<>(
-        Arrays.asList(
-            HtmlChapter.fromBuffer(
-                novella.source.getName(), 
-                novella.content)));
+  public static void chapterizeNovella(HtmlBook novella, Consumer<? super HtmlChapter> sink){
+    sink.accept(HtmlChapter.fromBuffer(
+        novella.source.getName(), 
+        novella.content));
   }
   
-  public static Collection<HtmlChapter> chapterizePQ(HtmlBook pq){
+  public static void chapterizePQ(HtmlBook pq, Consumer<? super HtmlChapter> sink){
     HtmlChapter[] files;
     {
       HtmlChapter body;
       {
-        int footnoteIndex = pq.adjacentElement(
-            (i) -> pq.hasLiteralAt("Footnote",i), Direction.PREV, pq.content.size());
-        int bodyEndIndex = pq.adjacentElement(footnoteIndex, Tag::isPOpen, Direction.PREV);
+        int footnoteIndex = pq.projection().lastIndexOf("Footnote", pq.content.size());
+        int bodyEndIndex = pq.adjacentElement(
+            footnoteIndex, 
+            HtmlEntity.TAG, 
+            Tag::isPOpen, 
+            Direction.PREV);
         List<HtmlEntity> bodySection = pq.section(0,bodyEndIndex);
         body = HtmlChapter.fromBuffer("PQ_0_THE_PRINCESS_AND_THE_QUEEN.html", bodySection);
       }
@@ -977,6 +957,7 @@ public class HtmlBook extends HtmlFile{
       {
         int footnoteStart = pq.adjacentElement(
             pq.content.size(), 
+            HtmlEntity.TAG, 
             Tag::isPOpen, 
             Direction.PREV);
         List<HtmlEntity> footnoteSection = pq.section(footnoteStart);
@@ -994,31 +975,35 @@ public class HtmlBook extends HtmlFile{
         "PQ_0_THE_PRINCESS_AND_THE_QUEEN.html#FOOTNOTE"
     };
     
-    IntStream.range(0, PQ_FINAL_FILE_COUNT)
-        .parallel()
-        .forEach((i) -> {
-            HtmlChapter file = files[i];
-            String href = hrefs[i];
-            
-            //replace superscript 1 with asterisk
-            int noteIndex = file.adjacentElement(
-                BEFORE_BEGINNING, 
-                Tag::isSup, 
-                Direction.NEXT);
-            noteIndex = file.adjacentElement(noteIndex, CharLiteral::is1, Direction.NEXT);
-            file.set(noteIndex, new CharLiteral('*'));
-            
-            //replace internal link with external link
-            int noteAnchorIndex = file.adjacentElement(
-                noteIndex, 
-                Tag::isAnchorOpen, 
-                Direction.PREV);
-            file.set(
-                noteAnchorIndex, 
-                new Tag("a id=\"FOOTNOTE\" href=\"" + href + "\""));
-        });
-    
-    return new ArrayList<>(Arrays.asList(files));
+    for(int i = 0; i < PQ_FINAL_FILE_COUNT; i++){
+      HtmlChapter file = files[i];
+      String href = hrefs[i];
+      
+      //replace superscript 1 with asterisk
+      int noteIndex = file.adjacentElement(
+          BEFORE_BEGINNING, 
+          HtmlEntity.TAG, 
+          Tag::isSup, 
+          Direction.NEXT);
+      noteIndex = file.adjacentElement(
+          noteIndex, 
+          HtmlEntity.LITERAL, 
+          CharLiteral::is1, 
+          Direction.NEXT);
+      file.set(noteIndex, CharLiteral.of('*'));
+      
+      //replace internal link with external link
+      int noteAnchorIndex = file.adjacentElement(
+          noteIndex, 
+          HtmlEntity.TAG, 
+          Tag::isAnchorOpen, 
+          Direction.PREV);
+      file.set(
+          noteAnchorIndex, 
+          new Tag("a id=\"FOOTNOTE\" href=\"" + href + "\""));
+      
+      sink.accept(file);
+    }
   }
   
   private static final int PQ_FINAL_FILE_COUNT = 2;
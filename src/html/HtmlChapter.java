@@ -1,17 +1,21 @@
 package html;
 
 import common.Files;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Iterator;
-import java.util.function.Function;
-import java.util.function.IntUnaryOperator;
 import java.util.function.Predicate;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import text.Location;
 import text.Phrase;
+import text.WordScan;
 
 /**
  * <p>Represents an HTML file and provides some convenience methods for working with an HTML
@@ -47,20 +51,42 @@ public class HtmlChapter extends HtmlFile implements Iterable<HtmlEntity>, Clone
   private final String filename;
   
   /**
-   * <p>Constructs an HtmlChapter based on the elements of {@code content}, with the filename
+   * <p>The positions of the words of this chapter, or null if they must be found again.</p>
+   */
+  private WordIndex words = null;
+  
+  /**
+   * <p>Constructs an HtmlChapter whose underlying list is {@code content}, with the filename
    * {@code name}.</p>
    * @param name the file address/name of this HtmlChapter
-   * @param content a list whose elements will be the elements of this HtmlChapter
+   * @param content the underlying list of this HtmlChapter
    */
-  private HtmlChapter(String name, List<HtmlEntity> content){
-    super(new ArrayList<>(content));
+  private HtmlChapter(String name, PieceTable content){
+    super(content);
     filename = Files.stripFolder(name);
   }
   
+  /**
+   * <p>Returns an HtmlChapter named {@code name} whose body is {@code buffer}, framed by the
+   * standard header and footer. The new HtmlChapter is a {@link PieceTable#appendView(List) view}
+   * of {@code buffer} and of header and footer segments shared by all chapters, so creating it
+   * copies no content, and changing it changes neither {@code buffer} nor any other
+   * HtmlChapter.</p>
+   * @param name the file address/name of the new HtmlChapter
+   * @param buffer the body of the new HtmlChapter, which must not change afterward
+   * @return an HtmlChapter named {@code name} whose body is {@code buffer}
+   */
   static HtmlChapter fromBuffer(String name, List<HtmlEntity> buffer){
-    HtmlChapter result = new HtmlChapter(name, buffer);
-    result.addHeaderFooter();
-    return result;
+    List<CharLiteral> title = CharLiteral.asList(chapterName(name));
+    PieceTable content = new PieceTable()
+        .appendView(HEADER_FRONT_HTML)
+        .appendView(title)
+        .appendView(HEADER_BACK_HTML)
+        .appendView(buffer)
+        .appendView(FOOTER_FRONT_HTML)
+        .appendView(title)
+        .appendView(FOOTER_BACK_HTML);
+    return new HtmlChapter(name, content);
   }
   
   /**
@@ -72,34 +98,64 @@ public class HtmlChapter extends HtmlFile implements Iterable<HtmlEntity>, Clone
   }
   
   /**
-   * <p>Adds a pair of anchor tags to this HtmlChapter around based on the AnchorInfo {@code a}. The
-   * added Tags are placed around the {@link Location#index word-index}-th word in this HtmlChapter,
-   * specified by {@code a}'s {@link AnchorInfo#position position} after the word at that position
-   * is verified as the first word of {@code a}'s {@link AnchorInfo#text phrase}. The link added
-   * via these tags links to {@code a}'s {@link AnchorInfo#linkTo destination}.</p>
+   * <p>An anchor tag to be inserted into the underlying list before the element now at
+   * {@code index}.</p> <p>Insertions at the same index are ordered by {@code rank}, which puts
+   * the opening tags of successive anchors in the order of the anchors and their closing tags in
+   * the reverse order, so that anchors on the same word nest.</p>
+   */
+  static final class Insertion implements Comparable<Insertion>{
+    
+    final int index;
+    final int rank;
+    final Tag tag;
+    
+    /**
+     * <p>The anchor whose opening tag this is, or null if this is a closing tag.</p>
+     */
+    final AnchorInfo anchor;
+    
+    private Insertion(int index, int rank, Tag tag, AnchorInfo anchor){
+      this.index = index;
+      this.rank = rank;
+      this.tag = tag;
+      this.anchor = anchor;
+    }
+    
+    @Override
+    public int compareTo(Insertion other){
+      int comp = Integer.compare(index, other.index);
+      return comp != 0 
+          ? comp 
+          : Integer.compare(rank, other.rank);
+    }
+  }
+  
+  /**
+   * <p>Adds to {@code insertions} the anchor tags that link the first word of the phrase of the
+   * AnchorInfo {@code a} to {@code a}'s {@link AnchorInfo#linkTo destination}. The tags are
+   * placed around the {@link Location#index word-index}-th word in this HtmlChapter, specified by
+   * {@code a}'s {@link AnchorInfo#position position}, after the word at that position is verified
+   * as the first word of {@code a}'s {@link AnchorInfo#text phrase}.</p>
    * @param a an AnchorInfo specifying everything needed to create a link from one repeated phrase
-   * in this HtmlChapter to the same repeated phrase in another HtmlChapter chapter.
+   * in this HtmlChapter to the same repeated phrase in another HtmlChapter chapter
+   * @param order the position of {@code a} among the anchors being added to this HtmlChapter
+   * @param insertions the list to which the anchor tags for {@code a} are added
    */
-  private void addAnchor(AnchorInfo a){
+  private void anchorInsertions(AnchorInfo a, int order, List<Insertion> insertions){
     int wordIndex = a.position().getIndex();
     
     validateWordWithIndex(firstWord(a.phrase()), wordIndex);
     
     List<Integer> insertPoints = anchorInsertionPoints(wordIndex);
-    insertPoints.sort((i1,i2) -> i2.compareTo(i1)); //sort into reverse order
     
     Tag open = new Tag(a.openingTagText());
     Tag close = new Tag(a.closingTagText());
-    //add close tag on even indices (e.g. rightmost insert position) 
-    //and add open tag on odd indices.
-    Function<Integer,Tag> nextTag = 
-        (i) -> i % 2 == 0 
-            ? close 
-            : open; 
-    
+    //the points alternate between the start and the end of a run of the word's characters, 
+    //beginning with the start of the word
     for(int i = 0; i < insertPoints.size(); i++){
-      content.add(insertPoints.get(i), nextTag.apply(i));
-      modCount++;
+      insertions.add(i % 2 == 0 
+          ? new Insertion(insertPoints.get(i), order, open, a) 
+          : new Insertion(insertPoints.get(i), -order, close, null));
     }
   }
   
@@ -133,20 +189,18 @@ public class HtmlChapter extends HtmlFile implements Iterable<HtmlEntity>, Clone
     */
   HtmlEntity set(int position, HtmlEntity elem){
     modCount++;
-    return content.set(position, elem);
+    HtmlEntity result = content.set(position, elem);
+    if(!result.isKind(HtmlEntity.TAG) || !elem.isKind(HtmlEntity.TAG)){
+      words = null;
+    }
+    return result;
   }
   
    /**
     * <p>Returns the {@code wordIndex}-th (zero-based) word after the chapter's title in this
-    * HtmlChapter. The first word after the title has wordIndex 0.</p> <p>The wordIndex-th word is
-    * determined by counting word-start points where a word character's most recent visible
-    * predecessor (any {@link CharLiteral literal character} or {@link CharCode character code} is
-    * not a word-legal character. HTML tags are not considered when finding the beginning of a
-    * word.</p> <p>The characters after the first are determined via a look- around process
-    * similar to that used to determine the location of the first character. The underlying list
-    * is crawled with increasing index, and individual characters are added to a StringBuilder as
-    * they are encountered. {@link Tag Tags} are ignored, and Codes and word-illegal literal
-    * characters cause the crawl-accumulation process to end.</p>
+    * HtmlChapter. The first word after the title has wordIndex 0.</p> <p>The bounds of the word
+    * are looked up in this chapter's {@link WordIndex word index}, and the literal characters
+    * between them are added to a StringBuilder. {@link Tag Tags} are ignored.</p>
     * @param wordIndex the number of words between the first word of the body of this file and the
     * word to be retrieved
     * @return the {@code wordIndex}-th (zero-based) word after the chapter's title in this
@@ -175,11 +229,9 @@ public class HtmlChapter extends HtmlFile implements Iterable<HtmlEntity>, Clone
    * the outside of the word could result in unbalanced tags. So, this method crawls along the
    * underlying list finding any clusters of Tags inside the word and marking the points around
    * them where extra closing anchor tags and extra opening anchor tags are needed to ensure tags
-   * are not unbalanced by the addition of these anchor tags.</p> <p>The returned list is
-   * constructed keeping mind that the calling context will add anchor tags of the correct type
-   * (closing or opening) and do so in reverse order, starting with the last index at which a tag
-   * is to be added, allowing the indices less than that to retain their meaning without any
-   * adjustments being needed.</p>
+   * are not unbalanced by the addition of these anchor tags.</p> <p>The returned list is in
+   * increasing order, and its elements alternate between points where an opening anchor tag is
+   * needed and points where a closing anchor tag is needed, starting with an opening tag.</p>
    * @param wordIndex the number of words between the sought word in this file and the first word
    * in the body of this chapter
    * @return a list of indices in the underlying list at which an anchor tag must be inserted in
@@ -198,16 +250,16 @@ public class HtmlChapter extends HtmlFile implements Iterable<HtmlEntity>, Clone
       if(
           is(
               i, 
-              HtmlChapter::isCharacter, 
+              HtmlEntity.CHARACTER, 
               Direction.PREV, 
-              Tag.class::isInstance) //htmlFile.get(i) is a character preceded by a tag.
+              HtmlEntity.TAG) //htmlFile.get(i) is a character preceded by a tag.
               
           //htmlFile.get(i) is a Tag preceded by a character.
           || is(
               i, 
-              Tag.class::isInstance, 
+              HtmlEntity.TAG, 
               Direction.PREV, 
-              HtmlChapter::isCharacter)){
+              HtmlEntity.CHARACTER)){
         result.add(i);
       }
     }
@@ -217,31 +269,22 @@ public class HtmlChapter extends HtmlFile implements Iterable<HtmlEntity>, Clone
   }
   
   /**
-   * <p>Returns true if the element at index {@code position} in the underlying list makes
-   * {@code test1} evaluate to true and the element in the underlying list before or after (if
-   * {@code dir} is Direction.PREV or Direction.NEXT respectively) that element makes
-   * {@code test2} evaluate to true, false otherwise.</p>
-   * @param position the position in the underlying list from which to extract an HTMLEntity to
-   * send to {@code test1}
-   * @param test1 the test to perform on the element of the underlying list at {@code position}
-   * @param dir the direction to go from {@code position} to get another HTMLEntity to send to
-   * {@code test2} for evaluation
-   * @param test2 the test to perform on the element before or after the element at
-   * {@code postion}, depending on the value of {@code dir}
-   * @return true if the element at index {@code position} in the underlying list makes
-   * {@code test1} evaluate to true and the element in the underlying list before or after (if
-   * {@code dir} is Direction.PREV or Direction.NEXT respectively) that element makes
-   * {@code test2} evaluate to true, false otherwise
-   */
-  private boolean is(
-      int position, 
-      Predicate<HtmlEntity> test1, 
-      Direction dir, 
-      Predicate<HtmlEntity> test2){
-    
-    HtmlEntity item = content.get(position);
-    HtmlEntity prevOrNext = content.get(dir.apply(position));
-    return test1.test(item) && test2.test(prevOrNext);
+   * <p>Returns true if the element at index {@code position} in the underlying list is of one of
+   * the {@link HtmlEntity#kind() kinds} {@code kinds1} and the element in the underlying list
+   * before or after (if {@code dir} is Direction.PREV or Direction.NEXT respectively) that element
+   * is of one of the kinds {@code kinds2}, false otherwise.</p>
+   * @param position the position in the underlying list of the first element to be tested
+   * @param kinds1 the kinds of which the element at {@code position} must be one
+   * @param dir the direction to go from {@code position} to get the second element to be tested
+   * @param kinds2 the kinds of which the element before or after the element at
+   * {@code position}, depending on the value of {@code dir}, must be one
+   * @return true if the element at index {@code position} in the underlying list is of one of
+   * the kinds {@code kinds1} and the element before or after it is of one of the kinds
+   * {@code kinds2}, false otherwise
+   */
+  private boolean is(int position, int kinds1, Direction dir, int kinds2){
+    return content.get(position).isKind(kinds1) 
+        && content.get(dir.apply(position)).isKind(kinds2);
   }
   
   /**
@@ -257,123 +300,16 @@ public class HtmlChapter extends HtmlFile implements Iterable<HtmlEntity>, Clone
   }
   
   /**
-   * <p>Returns the index in the underlying list of the {@code wordIndex}th word in the file after
-   * the title.</p>
-   * @param wordIndex the number of words between the sought word in this file and the first word
-   * in the body of this chapter
-   * @return the index in the underlying list of the {@code wordIndex}th word in the file after
-   * the title
+   * <p>Returns the {@link WordIndex index} of the words of this chapter, building it if this
+   * chapter has changed in a way that could have changed its words since it was last
+   * built.</p>
+   * @return the index of the words of this chapter
    */
-  private int getWord(int wordIndex){
-    return getWordCache.applyAsInt(wordIndex);
-  }
-  
-  private class GetWordCache implements IntUnaryOperator{
-      
-      /**
-       * <p>When this record of how many times this HtmlChapter has been modified is different from
-       * the {@link HtmlChapter#modCount value} stored in this HtmlChapter itself, a result is
-       * determined under worst-case scenario conditions, with the search beginning from the start
-       * of the file.</p>
-       */
-      private int modCount = HtmlChapter.this.modCount;
-      
-      /**
-       * <p>The value that was last returned by {@code applyAsInt(int)}. Initialized to
-       * Integer.MAX_VALUE. If {@code applyAsInt(int)} throws an exception, the output is not
-       * stored.</p>
-       */
-      private int storedWordIndex = Integer.MAX_VALUE;
-      
-      /**
-       * <p>The value sent as input to {@code applyAsInt(int)} for which {@code applyAsInt(int)}
-       * last returned a result. Initialized to Integer.MAX_VALUE. If {@code applyAsInt(int)}
-       * throws an exception, the input is not stored.</p>
-       */
-      private int storedWordPointer = Integer.MAX_VALUE;
-      
-      @Override
-      /**
-       * <p>If {@code wordIndex} is the same as {@link #storedWordIndex the stored input}, then
-       * the stored output is returned. Otherwise, crawls the underlying list from a starting
-       * point and increments a counter when a {@link #isWordStart(int) word start} is encountered
-       * until the counter reaches the input {@code wordIndex}, at which point the index in the
-       * list at which the method is operating is returned.</p> <p>If {@code wordIndex} is less
-       * than the stored input, then the start point for traversing the list is set to 0, the very
-       * beginning of the list. If {@code wordIndex} is greater than the stored input, then the
-       * start point for traversing the list is set to {@link #storedWordStart the stored output}
-       * to save the time that would otherwise be spent traversing the list from the beginning to
-       * that point.</p>
-       * @param wordIndex the number of words between the sought word in this file and the first
-       * word in the body of this chapter
-       * @return the index in this HtmlChapter's underlying list of the first letter of the
-       * {@code wordIndex}th word in the body of this chapter.
-       * @throws IllegalArgumentException if {@code wordIndex} is less than
-       * {@link HtmlChapter#baseWordIndex baseWordIndex}
-       * @throws IllegalStateException if {@code wordIndex} is too high such that there aren't
-       * enough words in this HtmlChapter to count that high
-       */
-      public int applyAsInt(int wordIndex){
-        if(wordIndex < 0){
-          throw new IllegalArgumentException(
-              "wordIndex " + wordIndex + " < 0");
-        } else if(this.modCount == HtmlChapter.this.modCount && wordIndex == storedWordIndex){
-          return storedWordPointer;
-        } else{
-          int previousWordIndex = -1;
-          int init_i = 0;
-          
-          if(this.modCount == HtmlChapter.this.modCount){
-            if(wordIndex > storedWordIndex){
-              init_i = storedWordPointer;
-              previousWordIndex = storedWordIndex-1;
-            }
-          } else{
-            this.modCount = HtmlChapter.this.modCount;
-          }
-          
-          int i;
-          for(i = init_i; i < content.size(); i++){
-            if(isWordStart(i)){
-              previousWordIndex++;
-            }
-            if(previousWordIndex==wordIndex){
-              storedWordIndex = wordIndex;
-              return storedWordPointer = i;
-            }
-          }
-          
-          throw new IllegalStateException(
-              "The specified wordIndex (" + wordIndex 
-              + ") is too high (max value of " + previousWordIndex 
-              + ").");
-        }
-      }
-  }
-  
-  /**
-   * <p>Does the work for {@link #getWord(int) getWord()} and stores its most recent input and
-   * output to more quickly return a result.</p>
-   */
-  private final IntUnaryOperator getWordCache = new GetWordCache();
-  
-  /**
-   * <p>Returns the position in the underlying list of the last character of the
-   * {@code wordIndex}-th word in the body of this chapter.</p>
-   * @param wordIndex the number of words between the sought word in this file and the first word
-   * in the body of this chapter
-   * @param startPoint a position in (typically at the very start of) the {@code wordIndex}-th
-   * word, from which to start looking for the end of the current word
-   * @return the position in the underlying list of the last character of the {@code wordIndex}-th
-   * word in the body of this chapter
-   */
-  private int getLastCharacter(int wordIndex, int startPoint){
-    for(int i = startPoint; i < content.size(); i++){
-      if(!isWord(adjacentElement(i, Direction.NEXT, HtmlChapter::isCharacter))){
-        return i;
-      }
+  private WordIndex words(){
+    if(words == null){
+      words = WordIndex.of(content, firstPClose());
     }
-    throw new IllegalStateException("Couldn't find last character of word.");
+    return words;
   }
   
   /**
@@ -383,63 +319,123 @@ public class HtmlChapter extends HtmlFile implements Iterable<HtmlEntity>, Clone
    * in the body of this chapter
    * @return an int array containing lower (inclusive) and upper (exclusive) bounds for the
    * {@code wordIndex}th word in this file
+   * @throws IllegalArgumentException if {@code wordIndex} is negative
+   * @throws IllegalStateException if {@code wordIndex} is too high such that there aren't enough
+   * words in this HtmlChapter to count that high
    */
   private int[] getWordBounds(int wordIndex){
-    int start = getWord(wordIndex);
-    return new int[]{start, getLastCharacter(wordIndex, start)+1};
+    WordIndex words = words();
+    if(wordIndex < 0){
+      throw new IllegalArgumentException(
+          "wordIndex " + wordIndex + " < 0");
+    } else if(wordIndex >= words.count()){
+      throw new IllegalStateException(
+          "The specified wordIndex (" + wordIndex 
+          + ") is too high (max value of " + (words.count() - 1) 
+          + ").");
+    }
+    return new int[]{words.start(wordIndex), words.end(wordIndex)};
   }
   
   /**
-   * <p>Returns true if the element at index {@code index} in the underlying list is the first
-   * character of a word, false otherwise.</p>
-   * @param index the index in the underlying list to be tested for whether it's the first
-   * character of a word
-   * @return true if the element at index {@code index} in the underlying list is the first
-   * character of a word, false otherwise
+   * <p>Returns an HtmlChapter with the same name and content as this one. The clone shares this
+   * chapter's content {@link PieceTable#copy() copy-on-write} rather than copying it, so cloning a
+   * chapter costs memory in proportion to the number of pieces of its content, not its length, and
+   * changes to either chapter never show in the other.</p>
+   * @return an HtmlChapter with the same name and content as this one
    */
-  private boolean isWordStart(int index){
-    return isWord(content.get(index)) 
-        && !isWord(adjacentElement(index, Direction.PREV, HtmlChapter::isCharacter));
+  @Override
+  public HtmlChapter clone(){
+    HtmlChapter result = new HtmlChapter(filename, content.copy());
+    result.words = words;
+    return result;
   }
   
   /**
-   * <p>Returns true if {@code elem} is character-type and is a word character, false
-   * otherwise.</p>
-   * @param elem the HTMLEntity to be assessed for legality as a word character
-   * @return true if {@code elem} is character-type and is a word character, false otherwise
+   * <p>Writes this HtmlChapter's name and content to {@code out} in a compact binary form that
+   * {@link #read(DataInput) read()} turns back into an equal HtmlChapter. Consecutive literal
+   * characters are written together as runs of text, and each Tag and CharCode as its text.</p>
+   * @param out the destination of this HtmlChapter's data
+   * @throws IOException if {@code out} cannot be written
    */
-  private static boolean isWord(HtmlEntity elem){
-    return CharLiteral.class.isInstance(elem) 
-        && Phrase.isPhraseChar(((CharLiteral)elem).c);
-  }
-  
-  private HtmlEntity adjacentElement(
-      int position, 
-      Direction direction, 
-      Predicate<HtmlEntity> typeRestriction){
+  public void write(DataOutput out) throws IOException{
+    out.writeUTF(filename);
     
-    int index = adjacentElement(position, typeRestriction, direction);
-    return index >= 0 
-        ? content.get(index) 
-        : null;
+    StringBuilder run = new StringBuilder(MAX_RUN_LENGTH);
+    for(HtmlEntity h : content){
+      if(h instanceof CharLiteral){
+        run.append(((CharLiteral) h).c);
+        if(run.length() == MAX_RUN_LENGTH){
+          writeRecord(out, RECORD_LITERALS, run.toString());
+          run.setLength(0);
+        }
+      } else{
+        if(run.length() > 0){
+          writeRecord(out, RECORD_LITERALS, run.toString());
+          run.setLength(0);
+        }
+        if(h instanceof Tag){
+          writeRecord(out, RECORD_TAG, ((Tag) h).content());
+        } else{
+          writeRecord(out, RECORD_CODE, ((CharCode) h).code());
+        }
+      }
+    }
+    if(run.length() > 0){
+      writeRecord(out, RECORD_LITERALS, run.toString());
+    }
+    out.writeByte(RECORD_END);
   }
   
-  @Override
-  public HtmlChapter clone(){
-    return new HtmlChapter(filename, content);
+  private static void writeRecord(DataOutput out, int kind, String text) throws IOException{
+    out.writeByte(kind);
+    out.writeUTF(text);
   }
   
-  private void addHeaderFooter(){
-    List<HtmlEntity> head = header();
-    List<HtmlEntity> foot = footer();
-    List<HtmlEntity> newContent = new ArrayList<>(head.size() + content.size() + foot.size());
-    newContent.addAll(head);
-    newContent.addAll(content);
-    newContent.addAll(foot);
+  /**
+   * <p>Reads an HtmlChapter {@link #write(DataOutput) written} to {@code in}.</p>
+   * @param in the source of the HtmlChapter's data
+   * @return the HtmlChapter whose data is read from {@code in}
+   * @throws IOException if {@code in} cannot be read or does not hold a written HtmlChapter
+   */
+  public static HtmlChapter read(DataInput in) throws IOException{
+    String name = in.readUTF();
+    
+    List<HtmlEntity> content = new ArrayList<>();
+    for(int kind; (kind = in.readByte()) != RECORD_END;){
+      String text = in.readUTF();
+      switch(kind){
+      case RECORD_LITERALS:
+        for(int i = 0; i < text.length(); i++){
+          content.add(CharLiteral.of(text.charAt(i)));
+        }
+        break;
+      case RECORD_TAG:
+        content.add(new Tag(text));
+        break;
+      case RECORD_CODE:
+        content.add(new CharCode(text));
+        break;
+      default:
+        throw new IOException("Unknown record kind " + kind + " in chapter " + name);
+      }
+    }
     
-    content = newContent;
+    return new HtmlChapter(name, new PieceTable(content));
   }
   
+  private static final int RECORD_END = 0;
+  private static final int RECORD_LITERALS = 1;
+  private static final int RECORD_TAG = 2;
+  private static final int RECORD_CODE = 3;
+  
+  /**
+   * <p>The most literal characters written in one record, small enough that the modified UTF-8
+   * encoding of the record's text cannot exceed the 65535-byte limit of
+   * {@link DataOutput#writeUTF(String) writeUTF}.</p>
+   */
+  private static final int MAX_RUN_LENGTH = 0x2000;
+  
   private static final List<HtmlEntity> HEADER_FRONT_HTML = new ArrayList<>();
   static{
       Stream.of(
@@ -504,18 +500,8 @@ public class HtmlChapter extends HtmlFile implements Iterable<HtmlEntity>, Clone
     HEADER_BACK_HTML.addAll(CharLiteral.NEW_LINE_LITERAL);
   }
   
-  private List<HtmlEntity> header(){
-    List<CharLiteral> name = CharLiteral.asList(chapterName());
-    List<HtmlEntity> result = new ArrayList<>(
-        HEADER_FRONT_HTML.size() + name.size() + HEADER_BACK_HTML.size());
-    result.addAll(HEADER_FRONT_HTML);
-    result.addAll(name);
-    result.addAll(HEADER_BACK_HTML);
-    return result;
-  }
-  
-  private String chapterName(){
-    String[] splitFilename = Files.stripFolderExtension(this.filename)
+  private static String chapterName(String filename){
+    String[] splitFilename = Files.stripFolderExtension(filename)
         .split(Files.FILENAME_COMPONENT_SEPARATOR, FILENAME_ELEMENT_COUNT);
     String chapterPart = splitFilename[FILENAME_CHAPTERNAME_INDEX];
     return chapterPart
@@ -575,16 +561,230 @@ public class HtmlChapter extends HtmlFile implements Iterable<HtmlEntity>, Clone
         .forEach(FOOTER_BACK_HTML::add);
   }
   
-  private List<HtmlEntity> footer(){
-    List<CharLiteral> name = CharLiteral.asList(chapterName());
-    List<HtmlEntity> result = new ArrayList<>(
-        FOOTER_BACK_HTML.size() + name.size() + FOOTER_FRONT_HTML.size());
-    result.addAll(FOOTER_FRONT_HTML);
-    result.addAll(name);
-    result.addAll(FOOTER_BACK_HTML);
+  /**
+   * <p>The number of the {@link ByteTemplate slot} in the {@link #HEADER_TEMPLATE header} and
+   * {@link #FOOTER_TEMPLATE footer} templates for the address of the previous chapter.</p>
+   */
+  static final int SLOT_PREV_HREF = 0;
+  
+  /**
+   * <p>The number of the slot for the title of the previous chapter.</p>
+   */
+  static final int SLOT_PREV_TITLE = 1;
+  
+  /**
+   * <p>The number of the slot for the title of this chapter.</p>
+   */
+  static final int SLOT_TITLE = 2;
+  
+  /**
+   * <p>The number of the slot for the address of the next chapter.</p>
+   */
+  static final int SLOT_NEXT_HREF = 3;
+  
+  /**
+   * <p>The number of the slot for the title of the next chapter.</p>
+   */
+  static final int SLOT_NEXT_TITLE = 4;
+  
+  static final int SLOT_COUNT = 5;
+  
+  /**
+   * <p>The address and title in a chapter-changing anchor before a {@link #setTrail(String,String)
+   * trail} is set.</p>
+   */
+  private static final String NO_ADDRESS = "nowhere";
+  private static final String NO_TITLE = "nothing";
+  
+  /**
+   * <p>The standard header, encoded once, with slots for the title and the addresses and titles
+   * of the previous and next chapters.</p>
+   */
+  static final ByteTemplate HEADER_TEMPLATE = chromeTemplate(HEADER_FRONT_HTML, HEADER_BACK_HTML);
+  
+  /**
+   * <p>The standard footer, encoded once, with the same slots as the
+   * {@link #HEADER_TEMPLATE header}.</p>
+   */
+  static final ByteTemplate FOOTER_TEMPLATE = chromeTemplate(FOOTER_FRONT_HTML, FOOTER_BACK_HTML);
+  
+  /**
+   * <p>The standard header with the whitespace between its tags removed, for
+   * {@link Markup#isMinified() minified} chapters.</p>
+   */
+  static final ByteTemplate MIN_HEADER_TEMPLATE = ByteTemplate.compile(
+      minifyChrome(chromeMarked(HEADER_FRONT_HTML, HEADER_BACK_HTML)));
+  
+  /**
+   * <p>The standard footer with the whitespace between its tags removed, for
+   * {@link Markup#isMinified() minified} chapters.</p>
+   */
+  static final ByteTemplate MIN_FOOTER_TEMPLATE = ByteTemplate.compile(
+      minifyChrome(chromeMarked(FOOTER_FRONT_HTML, FOOTER_BACK_HTML)));
+  
+  private static ByteTemplate chromeTemplate(List<HtmlEntity> front, List<HtmlEntity> back){
+    return ByteTemplate.compile(chromeMarked(front, back));
+  }
+  
+  private static String chromeMarked(List<HtmlEntity> front, List<HtmlEntity> back){
+    StringBuilder marked = new StringBuilder();
+    appendMarked(marked, front);
+    marked.append(ByteTemplate.slot(SLOT_TITLE));
+    appendMarked(marked, back);
+    return marked.toString();
+  }
+  
+  /**
+   * <p>Returns {@code marked} without the whitespace between its tags or at its ends. Every tag
+   * in the standard header and footer is block-level, so that whitespace is never rendered.</p>
+   */
+  private static String minifyChrome(String marked){
+    return marked
+        .replaceAll(Tag.END + "\\s+" + Tag.START, Tag.END + Tag.START)
+        .replaceAll("\\A\\s+|\\s+\\z", "");
+  }
+  
+  /**
+   * <p>Appends the text of {@code segment} to {@code marked}, with the address and title of each
+   * chapter-changing anchor replaced by the marks of their slots.</p>
+   */
+  private static void appendMarked(StringBuilder marked, List<HtmlEntity> segment){
+    for(HtmlEntity h : segment){
+      if(isAnchorWithMatchID(h, PREV_CHAPTER, ID_ATTRIB)){
+        marked.append(markSlots(h, SLOT_PREV_HREF, SLOT_PREV_TITLE));
+      } else if(isAnchorWithMatchID(h, NEXT_CHAPTER, ID_ATTRIB)){
+        marked.append(markSlots(h, SLOT_NEXT_HREF, SLOT_NEXT_TITLE));
+      } else{
+        marked.append(h);
+      }
+    }
+  }
+  
+  private static String markSlots(HtmlEntity anchor, int hrefSlot, int titleSlot){
+    return replaceValueOfAttribute(
+        replaceValueOfAttribute(anchor.toString(), HREF_START, ByteTemplate.slot(hrefSlot)), 
+        TITLE_START, 
+        ByteTemplate.slot(titleSlot));
+  }
+  
+  /**
+   * <p>Returns the UTF-8 encoded values of the slots of the {@link #HEADER_TEMPLATE header} and
+   * {@link #FOOTER_TEMPLATE footer} templates for this chapter when the previous and next
+   * chapters on its trail are {@code prev} and {@code next}.</p>
+   * @param prev the name of the file of the previous chapter, or null if there is no trail
+   * @param next the name of the file of the next chapter, or null if there is no trail
+   * @return the values of the slots of the header and footer templates for this chapter
+   */
+  byte[][] chromeSlots(String prev, String next){
+    byte[][] result = new byte[SLOT_COUNT][];
+    result[SLOT_PREV_HREF] = trailSlot(SLOT_PREV_HREF, prev, next);
+    result[SLOT_PREV_TITLE] = trailSlot(SLOT_PREV_TITLE, prev, next);
+    result[SLOT_TITLE] = utf8(chapterName(filename));
+    result[SLOT_NEXT_HREF] = trailSlot(SLOT_NEXT_HREF, prev, next);
+    result[SLOT_NEXT_TITLE] = trailSlot(SLOT_NEXT_TITLE, prev, next);
     return result;
   }
   
+  /**
+   * <p>Returns true if {@code slot} is one of the slots of the {@link #HEADER_TEMPLATE header}
+   * and {@link #FOOTER_TEMPLATE footer} templates whose value depends on the trail, false
+   * otherwise.</p>
+   */
+  static boolean isTrailSlot(int slot){
+    return slot != SLOT_TITLE && 0 <= slot && slot < SLOT_COUNT;
+  }
+  
+  /**
+   * <p>Returns the UTF-8 encoded value of the {@link #isTrailSlot(int) trail slot} {@code slot}
+   * when the previous and next chapters on the trail are {@code prev} and {@code next}.</p>
+   * @param slot the number of a trail slot
+   * @param prev the name of the file of the previous chapter, or null if there is no trail
+   * @param next the name of the file of the next chapter, or null if there is no trail
+   * @return the value of {@code slot} for a trail from {@code prev} to {@code next}
+   */
+  static byte[] trailSlot(int slot, String prev, String next){
+    switch(slot){
+    case SLOT_PREV_HREF:
+      return utf8(prev == null ? NO_ADDRESS : prev);
+    case SLOT_PREV_TITLE:
+      return utf8(prev == null ? NO_TITLE : title(prev));
+    case SLOT_NEXT_HREF:
+      return utf8(next == null ? NO_ADDRESS : next);
+    case SLOT_NEXT_TITLE:
+      return utf8(next == null ? NO_TITLE : title(next));
+    default:
+      throw new IllegalArgumentException(slot + " is not a trail slot");
+    }
+  }
+  
+  private static byte[] utf8(String s){
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+  
+  /**
+   * <p>Returns the index in the underlying list of the first element after the standard header,
+   * or {@code BEFORE_BEGINNING} if the underlying list does not start with the standard header
+   * for this chapter's title. The addresses and titles in the header's chapter-changing anchors
+   * may be anything.</p>
+   * @return the index in the underlying list of the first element of the body, or
+   * {@code BEFORE_BEGINNING} if this chapter does not have the standard header
+   */
+  int bodyStart(){
+    List<CharLiteral> title = CharLiteral.asList(chapterName(filename));
+    return hasChrome(0, HEADER_FRONT_HTML, title, HEADER_BACK_HTML) 
+        ? HEADER_FRONT_HTML.size() + title.size() + HEADER_BACK_HTML.size() 
+        : BEFORE_BEGINNING;
+  }
+  
+  /**
+   * <p>Returns the index in the underlying list of the first element of the standard footer, or
+   * {@code BEFORE_BEGINNING} if the underlying list does not end with the standard footer for
+   * this chapter's title.</p>
+   * @return the index in the underlying list just past the last element of the body, or
+   * {@code BEFORE_BEGINNING} if this chapter does not have the standard footer
+   */
+  int bodyEnd(){
+    List<CharLiteral> title = CharLiteral.asList(chapterName(filename));
+    int start = content.size() - (FOOTER_FRONT_HTML.size() + title.size() + FOOTER_BACK_HTML.size());
+    return start >= 0 && hasChrome(start, FOOTER_FRONT_HTML, title, FOOTER_BACK_HTML) 
+        ? start 
+        : BEFORE_BEGINNING;
+  }
+  
+  /**
+   * <p>Returns true if the elements of {@code front}, {@code title}, and {@code back} are in the
+   * underlying list in that order starting at {@code from}, allowing for any address and title
+   * in chapter-changing anchors, false otherwise.</p>
+   */
+  private boolean hasChrome(
+      int from, 
+      List<HtmlEntity> front, 
+      List<CharLiteral> title, 
+      List<HtmlEntity> back){
+    
+    if(from + front.size() + title.size() + back.size() > content.size()){
+      return false;
+    }
+    int i = from;
+    for(List<? extends HtmlEntity> segment : Arrays.asList(front, title, back)){
+      for(HtmlEntity expected : segment){
+        if(!isChromeMatch(content.get(i++), expected)){
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+  
+  private static boolean isChromeMatch(HtmlEntity actual, HtmlEntity expected){
+    if(isAnchorWithMatchID(expected, PREV_CHAPTER, ID_ATTRIB)){
+      return isAnchorWithMatchID(actual, PREV_CHAPTER, ID_ATTRIB);
+    } else if(isAnchorWithMatchID(expected, NEXT_CHAPTER, ID_ATTRIB)){
+      return isAnchorWithMatchID(actual, NEXT_CHAPTER, ID_ATTRIB);
+    }
+    return actual.kind() == expected.kind() && actual.toString().equals(expected.toString());
+  }
+  
   @Override
   public Iterator<HtmlEntity> iterator(){
     return content.iterator();
@@ -593,24 +793,41 @@ public class HtmlChapter extends HtmlFile implements Iterable<HtmlEntity>, Clone
   /**
    * <p>Generates a plaintext representation of the content of this html file other than the 
    * chapter title if this is an html chapter.</p>
-   * @return
+   * @return the {@link WordScan#getText() normalized text} of this chapter's body
    */
   public String body(){
-    StringBuilder sb = new StringBuilder();
-    
-    int startPoint = firstPClose();
+    return scanBody().getText();
+  }
+  
+  /**
+   * <p>Finds the words of the plaintext representation of the content of this html file other
+   * than the chapter title if this is an html chapter. The plaintext is gathered into a single
+   * char array and {@link WordScan#scan(char[],int) scanned} in one pass.</p>
+   * @return the words of this chapter's body
+   */
+  public WordScan scanBody(){
+    char[] raw = new char[content.size()];
+    int length = 0;
     
-    for(int i = startPoint; i < content.size(); i++){
-      StringBuilder entityText = new StringBuilder(content.get(i).txtString());
-      for(int j = 0; j < entityText.length(); j++){
-        if(!Phrase.isPhraseChar(entityText.charAt(j))){
-          entityText.setCharAt(j, Phrase.WORD_SEPARATOR_CHAR);
+    for(int i = firstPClose(); i < content.size(); i++){
+      HtmlEntity h = content.get(i);
+      if(h instanceof CharLiteral && ((CharLiteral) h).c != CharLiteral.NEW_LINE){
+        //a line separator written for an earlier new line may have used up the spare room
+        if(length == raw.length){
+          raw = Arrays.copyOf(raw, 2 * raw.length);
+        }
+        raw[length++] = ((CharLiteral) h).c;
+      } else{
+        String text = h.txtString();
+        if(length + text.length() > raw.length){
+          raw = Arrays.copyOf(raw, Math.max(2 * raw.length, length + text.length()));
         }
+        text.getChars(0, text.length(), raw, length);
+        length += text.length();
       }
-      sb.append(entityText);
     }
     
-    return sb.toString();
+    return WordScan.scan(raw, length);
   }
   
   private int firstPClose(){
@@ -620,11 +837,37 @@ public class HtmlChapter extends HtmlFile implements Iterable<HtmlEntity>, Clone
         .getAsInt();
   }
   
-  public HtmlChapter link(List<AnchorInfo> anchors){
-    anchors.stream()
-        .sorted()
-        .forEach(this::addAnchor);
-    return this;
+  /**
+   * <p>Returns the anchor tags to be inserted into this HtmlChapter for all the AnchorInfos in
+   * {@code anchors}, sorted by the index before which they are inserted.</p> <p>The insertion
+   * points of every anchor are found in the current content without changing it, visiting the
+   * words in increasing order so that finding them is one pass through the content.</p>
+   * @param anchors the anchors to be added to this HtmlChapter
+   * @return the anchor tags for {@code anchors} and their insertion points, sorted
+   */
+  List<Insertion> insertions(List<AnchorInfo> anchors){
+    List<AnchorInfo> sorted = new ArrayList<>(anchors);
+    Collections.sort(sorted);
+    
+    List<Insertion> insertions = new ArrayList<>(4 * sorted.size());
+    for(int i = 0; i < sorted.size(); i++){
+      anchorInsertions(sorted.get(i), i + 1, insertions);
+    }
+    Collections.sort(insertions);
+    return insertions;
+  }
+  
+  /**
+   * <p>Returns a {@link LinkedChapter view} of this HtmlChapter with anchor tags for all the
+   * AnchorInfos in {@code anchors}. The tags are merged into the content as it is read instead
+   * of being inserted, so neither this HtmlChapter nor a linked copy of it is changed or
+   * built.</p>
+   * @param anchors the anchors to add to the view
+   * @return a view of this HtmlChapter with anchor tags for {@code anchors}
+   */
+  public LinkedChapter linked(List<AnchorInfo> anchors){
+    HtmlChapter view = clone();
+    return new LinkedChapter(view, view.insertions(anchors));
   }
 
   /**
@@ -654,7 +897,7 @@ public class HtmlChapter extends HtmlFile implements Iterable<HtmlEntity>, Clone
         (h) -> isAnchorWithMatchID(h, idValue, idAttrib);
     int pointer = INIT_POINTER;
     while(INIT_POINTER 
-        != (pointer = adjacentElement(pointer, isAnchorWithMatchID, Direction.NEXT))){
+        != (pointer = adjacentElement(pointer, HtmlEntity.TAG, isAnchorWithMatchID, Direction.NEXT))){
       
       String tag = content.get(pointer).toString();
       tag = tag.substring(Tag.START.length(), tag.length() - Tag.END.length());
@@ -688,7 +931,7 @@ public class HtmlChapter extends HtmlFile implements Iterable<HtmlEntity>, Clone
    * @param address the address of an html file for a chapter being linked.
    * @return {@code address} with its book name, chapter index, and file extension stripped away.
    */
-  private static String title(String address){
+  static String title(String address){
     if(address.isEmpty()){
       return address;
     }
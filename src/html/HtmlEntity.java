@@ -1,10 +1,62 @@
 package html;
 
+import common.Utf8Sink;
+import java.io.IOException;
+
 /**
  * <p>A text element of an HTML file.<p>
  */
 public abstract class HtmlEntity {
 	
+  /**
+   * <p>The {@link #kind() kind} of a {@link CharLiteral CharLiteral}.</p>
+   */
+  public static final int LITERAL = 1;
+  
+  /**
+   * <p>The {@link #kind() kind} of a {@link CharCode CharCode}.</p>
+   */
+  public static final int CODE = 1 << 1;
+  
+  /**
+   * <p>The {@link #kind() kind} of a {@link Tag Tag}.</p>
+   */
+  public static final int TAG = 1 << 2;
+  
+  /**
+   * <p>The kinds of HTMLEntity that stand for a character: {@link #LITERAL LITERAL} and
+   * {@link #CODE CODE}.</p>
+   */
+  public static final int CHARACTER = LITERAL | CODE;
+  
+  private final int kind;
+  
+  protected HtmlEntity(int kind){
+    this.kind = kind;
+  }
+  
+  /**
+   * <p>Returns the kind of this HTMLEntity, one of {@link #LITERAL LITERAL}, {@link #CODE CODE},
+   * and {@link #TAG TAG}. Each kind is a single bit, so a set of kinds is their bitwise OR and
+   * {@code (h.kind() & kinds) != 0} tests whether {@code h} is of any kind in {@code kinds}
+   * without a type check or a virtual call.</p>
+   * @return the kind of this HTMLEntity
+   */
+  public final int kind(){
+    return kind;
+  }
+  
+  /**
+   * <p>Returns true if this HTMLEntity is of any of the kinds in {@code kinds}, false
+   * otherwise.</p>
+   * @param kinds the bitwise OR of one or more of {@link #LITERAL LITERAL}, {@link #CODE CODE},
+   * and {@link #TAG TAG}
+   * @return true if this HTMLEntity is of any of the kinds in {@code kinds}, false otherwise
+   */
+  public final boolean isKind(int kinds){
+    return (kind & kinds) != 0;
+  }
+  
   /**
    * <p>Returns a plaintext interpretation of this HTMLEntity.</p>
    * @return a plaintext interpretation of this HTMLEntity.
@@ -26,4 +78,13 @@ public abstract class HtmlEntity {
    * @return true if the {@code c} matches {@code h}, false otherwise
    */
   public abstract boolean match(char c);
+  
+  /**
+   * <p>Writes the HTML text of this HTMLEntity, its {@code toString()}, to {@code out}.</p>
+   * @param out the destination of the text
+   * @throws IOException if {@code out} cannot be written
+   */
+  public void write(Utf8Sink out) throws IOException{
+    out.write(toString());
+  }
 }
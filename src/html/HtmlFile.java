@@ -1,6 +1,7 @@
 package html;
 
 import java.util.List;
+import java.util.function.IntPredicate;
 import java.util.function.Predicate;
 
 public class HtmlFile {
@@ -8,13 +9,27 @@ public class HtmlFile {
   protected static final int BEFORE_BEGINNING = -1;
   
   /**
-   * <p>The underlying list.</p>
+   * <p>The underlying list, a {@link PieceTable PieceTable} so that removing a region of it or
+   * inserting elements into it does not move the rest of its elements.</p>
    */
-  protected List<HtmlEntity> content;
+  protected PieceTable content;
   
   protected int modCount = 0;
   
+  /**
+   * <p>Constructs an HtmlFile whose underlying list holds the elements of {@code content}, which
+   * the new HtmlFile takes over without copying.</p>
+   * @param content the initial elements of this HtmlFile
+   */
   protected HtmlFile(List<HtmlEntity> content){
+    this.content = new PieceTable(content);
+  }
+  
+  /**
+   * <p>Constructs an HtmlFile whose underlying list is {@code content}.</p>
+   * @param content the underlying list of this HtmlFile
+   */
+  HtmlFile(PieceTable content){
     this.content = content;
   }
   
@@ -23,7 +38,7 @@ public class HtmlFile {
    * {@link CharLiteral Ch} or a {@link CharCode Code}.</p>
    */
   protected static boolean isCharacter(HtmlEntity h){
-    return CharLiteral.class.isInstance(h) || CharCode.class.isInstance(h);
+    return h.isKind(HtmlEntity.CHARACTER);
   }
   
   /**
@@ -45,14 +60,66 @@ public class HtmlFile {
       Predicate<HtmlEntity> condition, 
       Direction direction){
     
-    for(int i = direction.apply(startPosition); 
-        direction.crawlTest(i, content);
-        i = direction.apply(i)){
-      
+    final int size = content.size();
+    final int step = direction.step();
+    for(int i = startPosition + step; direction.inBounds(i, size); i += step){
       if(condition.test(content.get(i))){
         return i;
       }
     }
     return BEFORE_BEGINNING;
   }
+  
+  /**
+   * <p>Returns the position in the underlying list of the element nearest to but not at
+   * {@code startPosition} in the direction specified by {@code direction} whose
+   * {@link HtmlEntity#kind() kind} is one of {@code kinds} and for which {@code condition}
+   * evaluates to true. Elements of other kinds are passed over by comparing their kind with
+   * {@code kinds}, without calling {@code condition}.</p>
+   * @param startPosition the pre-starting position for this operation
+   * @param kinds the bitwise OR of the kinds of element to be considered
+   * @param condition a Predicate whose evaluation to true for an element of one of the specified
+   * kinds causes this method to return its position in the underlying list
+   * @param direction this method's direction of traversal of the underlying list
+   * @return the position in the underlying list of the nearest element of one of {@code kinds}
+   * for which {@code condition} evaluates to true, or {@code BEFORE_BEGINNING} if there is none
+   */
+  protected int adjacentElement(
+      int startPosition, 
+      int kinds, 
+      Predicate<HtmlEntity> condition, 
+      Direction direction){
+    
+    final int size = content.size();
+    final int step = direction.step();
+    for(int i = startPosition + step; direction.inBounds(i, size); i += step){
+      HtmlEntity h = content.get(i);
+      if(h.isKind(kinds) && condition.test(h)){
+        return i;
+      }
+    }
+    return BEFORE_BEGINNING;
+  }
+  
+  /**
+   * <p>Returns the position in the underlying list nearest to but not at {@code startPosition}
+   * in the direction specified by {@code direction} for which {@code condition} evaluates to
+   * true. Unlike {@link #adjacentElement(int, Predicate, Direction) adjacentElement},
+   * {@code condition} is given the position rather than the element there.</p>
+   * @param startPosition the pre-starting position for this operation
+   * @param condition a test of positions in the underlying list
+   * @param direction this method's direction of traversal of the underlying list
+   * @return the position in the underlying list nearest to {@code startPosition} for which
+   * {@code condition} evaluates to true, or {@code BEFORE_BEGINNING} if there is none
+   */
+  protected int adjacentIndex(int startPosition, IntPredicate condition, Direction direction){
+    final int size = content.size();
+    final int step = direction.step();
+    for(int i = startPosition + step; direction.inBounds(i, size); i += step){
+      if(condition.test(i)){
+        return i;
+      }
+    }
+    return BEFORE_BEGINNING;
+  }
 }
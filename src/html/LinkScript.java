@@ -0,0 +1,151 @@
+package html;
+
+import common.Files;
+import common.Utf8Sink;
+import java.io.IOException;
+
+/**
+ * <p>The script that adds the anchor tags to a chapter written with
+ * {@link Markup#CLIENT_LINKED client-side linking}, and the names of the files it reads.</p>
+ * <p>Each such chapter loads, after its body, the {@link PhraseTable#SCRIPT_NAME phrases}, its
+ * own {@link #dataName(String) link data}, and this script. The link data sets {@code LINKS} to
+ * an array with one entry for each anchor, in order: the index of the linked word, the number
+ * of the phrase, the name of the file linked to, and the index of the word linked to. The
+ * script counts the words of the page's text the same way the {@link WordIndex words of the
+ * chapter} were counted, starting after the first paragraph, notes where each linked word is,
+ * and wraps those words in anchor tags one block at a time as each block comes near the
+ * screen, or at once if the page is opened at an anchor's id.</p> <p>The link data is a script
+ * rather than a plain JSON file so that chapters opened straight from the disk, where a page
+ * cannot fetch other files, are still linked.</p>
+ */
+public final class LinkScript {
+  
+  /**
+   * <p>The name of the file of the script, in the same folder as the chapters.</p>
+   */
+  public static final String SCRIPT_NAME = "links.js";
+  
+  /**
+   * <p>The extension that replaces that of a chapter's file to name its link data.</p>
+   */
+  private static final String DATA_EXTENSION = ".links.js";
+  
+  private static final String SCRIPT = 
+      "(function(){\n"
+      + "var LINKS=window.LINKS;\n"
+      + "if(!LINKS||!LINKS.length){return;}\n"
+      + "var WORD=/[\\p{L}\\p{Mn}\\p{Mc}\\p{Nd}'-]/u;\n"
+      + "var BLOCK=\"p,div,td,th,li,blockquote,h1,h2,h3,h4,h5,h6\";\n"
+      + "function isWordChar(c){\n"
+      + "var n=c.charCodeAt(0);\n"
+      + "if(n<128){return (n>=97&&n<=122)||(n>=65&&n<=90)||(n>=48&&n<=57)||n===39||n===45;}\n"
+      + "return WORD.test(c);\n"
+      + "}\n"
+      + "var wanted={};\n"
+      + "LINKS.forEach(function(l){(wanted[l[0]]=wanted[l[0]]||[]).push(l);});\n"
+      + "var first=document.querySelector(\"p\");\n"
+      + "var walker=document.createTreeWalker(document.body,NodeFilter.SHOW_TEXT,null,false);\n"
+      + "var segments=[];\n"
+      + "var index=-1,inWord=false,node,open;\n"
+      + "while((node=walker.nextNode())){\n"
+      + "if(first&&(first.contains(node)||!(first.compareDocumentPosition(node)&Node.DOCUMENT_POSITION_FOLLOWING))){continue;}\n"
+      + "var s=node.data;\n"
+      + "open=null;\n"
+      + "for(var i=0;i<s.length;i++){\n"
+      + "var w=isWordChar(s.charAt(i));\n"
+      + "if(w&&!inWord){index++;}\n"
+      + "if(w&&wanted[index]){\n"
+      + "if(open){open.end=i+1;}\n"
+      + "else{\n"
+      + "var last=segments[segments.length-1];\n"
+      + "open={node:node,start:i,end:i+1,word:index,links:wanted[index],first:!last||last.word!==index};\n"
+      + "segments.push(open);\n"
+      + "}\n"
+      + "}else{open=null;}\n"
+      + "inWord=w;\n"
+      + "}\n"
+      + "}\n"
+      + "function wrap(seg){\n"
+      + "var mid=seg.node.splitText(seg.start);\n"
+      + "mid.splitText(seg.end-seg.start);\n"
+      + "var outer=null,inner=null;\n"
+      + "seg.links.forEach(function(l){\n"
+      + "var a=document.createElement(\"a\");\n"
+      + "if(!outer&&seg.first){a.id=String(seg.word);}\n"
+      + "a.href=l[2]+\"#\"+l[3];\n"
+      + "if(window.PHRASES){a.title=window.PHRASES[l[1]];}\n"
+      + "if(inner){inner.appendChild(a);}else{outer=a;}\n"
+      + "inner=a;\n"
+      + "});\n"
+      + "mid.parentNode.replaceChild(outer,mid);\n"
+      + "inner.appendChild(mid);\n"
+      + "}\n"
+      + "var groups=new Map();\n"
+      + "segments.forEach(function(seg){\n"
+      + "var p=seg.node.parentNode;\n"
+      + "var b=(p.closest&&p.closest(BLOCK))||document.body;\n"
+      + "var g=groups.get(b);\n"
+      + "if(!g){g={segs:[],done:false};groups.set(b,g);}\n"
+      + "g.segs.push(seg);\n"
+      + "});\n"
+      + "function materialize(g){\n"
+      + "if(g.done){return;}\n"
+      + "g.done=true;\n"
+      + "for(var i=g.segs.length-1;i>=0;i--){wrap(g.segs[i]);}\n"
+      + "}\n"
+      + "function showHash(){\n"
+      + "var m=/^#(\\d+)$/.exec(location.hash);\n"
+      + "if(!m){return;}\n"
+      + "var w=+m[1];\n"
+      + "groups.forEach(function(g){\n"
+      + "if(!g.done&&g.segs.some(function(s){return s.word===w;})){materialize(g);}\n"
+      + "});\n"
+      + "var target=document.getElementById(m[1]);\n"
+      + "if(target){target.scrollIntoView();}\n"
+      + "}\n"
+      + "if(\"IntersectionObserver\" in window){\n"
+      + "var observer=new IntersectionObserver(function(entries){\n"
+      + "entries.forEach(function(e){\n"
+      + "if(e.isIntersecting){materialize(groups.get(e.target));observer.unobserve(e.target);}\n"
+      + "});\n"
+      + "},{rootMargin:\"100% 0px\"});\n"
+      + "groups.forEach(function(g,b){observer.observe(b);});\n"
+      + "}else{\n"
+      + "groups.forEach(materialize);\n"
+      + "}\n"
+      + "showHash();\n"
+      + "window.addEventListener(\"hashchange\",showHash);\n"
+      + "})();\n";
+  
+  private LinkScript(){
+  }
+  
+  /**
+   * <p>Returns the name of the file of the link data of the chapter whose file is named
+   * {@code chapterName}.</p>
+   * @param chapterName the name of a chapter's file
+   * @return the name of the file of the link data of that chapter
+   */
+  public static String dataName(String chapterName){
+    return Files.stripExtension(chapterName) + DATA_EXTENSION;
+  }
+  
+  /**
+   * <p>Writes the script.</p>
+   * @param out the destination of the script
+   * @throws IOException if {@code out} cannot be written
+   */
+  public static void writeScript(Utf8Sink out) throws IOException{
+    out.write(SCRIPT);
+  }
+  
+  /**
+   * <p>Returns the elements that load the phrases, the link data, and the script, written at the
+   * end of the body of the chapter whose file is named {@code chapterName}.</p>
+   */
+  static String scriptElements(String chapterName){
+    return PhraseTable.SCRIPT_ELEMENT 
+        + "<script src=\"" + dataName(chapterName) + "\" defer></script>" 
+        + "<script src=\"" + SCRIPT_NAME + "\" defer></script>";
+  }
+}
@@ -0,0 +1,278 @@
+package html;
+
+import common.Utf8Sink;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>An HtmlChapter with anchor tags for its repeated phrases, produced as it is read. The
+ * chapter's content is left as it is, and the sorted anchor tags are merged in between its
+ * elements by the iterator, so writing out a linked chapter needs no linked copy of the
+ * chapter's content.</p>
+ */
+public final class LinkedChapter implements Iterable<HtmlEntity>{
+  
+  /**
+   * <p>The chapter being linked, a {@link HtmlChapter#clone() copy} of the source chapter so that
+   * its {@link #setTrail(String,String) trail} can be set without changing the source.</p>
+   */
+  private final HtmlChapter chapter;
+  
+  /**
+   * <p>The anchor tags to be merged into the content of {@link #chapter chapter}, sorted by the
+   * index before which they go.</p>
+   */
+  private final List<HtmlChapter.Insertion> insertions;
+  
+  /**
+   * <p>The name of the file of the previous chapter on this chapter's trail, or null if no trail
+   * has been set.</p>
+   */
+  private String prev = null;
+  
+  /**
+   * <p>The name of the file of the next chapter on this chapter's trail, or null if no trail has
+   * been set.</p>
+   */
+  private String next = null;
+  
+  /**
+   * <p>True if the {@link #setTrail(String,String) trail} has changed since it was last put into
+   * the header and footer anchors of {@link #chapter chapter}.</p>
+   */
+  private boolean trailChanged = false;
+  
+  LinkedChapter(HtmlChapter chapter, List<HtmlChapter.Insertion> insertions){
+    this.chapter = chapter;
+    this.insertions = insertions;
+  }
+  
+  /**
+   * <p>Returns the name of the chapter's file.</p>
+   * @return the name of the chapter's file
+   */
+  public String getName(){
+    return chapter.getName();
+  }
+  
+  /**
+   * <p>Returns the chapter's title as it appears in the links to it from other chapters.</p>
+   * @return the chapter's title
+   */
+  public String getTitle(){
+    return HtmlChapter.title(getName());
+  }
+  
+  /**
+   * <p>Points the links to the previous and next chapters in this chapter's header and footer at
+   * {@code prev} and {@code next}.</p>
+   * @param prev the name of the file of the previous chapter
+   * @param next the name of the file of the next chapter
+   */
+  public void setTrail(String prev, String next){
+    this.prev = prev;
+    this.next = next;
+    this.trailChanged = true;
+  }
+  
+  /**
+   * <p>Writes this chapter's HTML to {@code out}.</p> <p>If the chapter has the
+   * standard header and footer and none of its anchors are in them, the header and footer are
+   * written from their {@link HtmlChapter#HEADER_TEMPLATE pre-encoded templates} with this
+   * chapter's title and trail in their slots, and only the body is encoded element by element.
+   * Otherwise every element is encoded.</p>
+   * @param out the destination of this chapter's HTML
+   * @throws IOException if {@code out} cannot be written
+   */
+  public void write(Utf8Sink out) throws IOException{
+    writeLocatingTrail(out);
+  }
+  
+  /**
+   * <p>{@link #write(Utf8Sink) Writes} this chapter's HTML to {@code out} and returns where in
+   * what was written the addresses and titles of the previous and next chapters are.</p>
+   * @param out the destination of this chapter's HTML
+   * @return the places in {@code out} of the trail links' addresses and titles, or
+   * {@link TrailSlots#NONE NONE} if the header and footer were not written from templates
+   * @throws IOException if {@code out} cannot be written
+   */
+  public TrailSlots writeLocatingTrail(Utf8Sink out) throws IOException{
+    return writeLocatingTrail(out, Markup.FULL, null);
+  }
+  
+  /**
+   * <p>{@link #writeLocatingTrail(Utf8Sink) Writes} this chapter's HTML to {@code out} in the form
+   * {@code markup} and returns where in what was written the addresses and titles of the
+   * previous and next chapters are. A chapter without the standard header and footer has
+   * nowhere to load scripts, so it is written in the {@link Markup#withoutScripts() closest form
+   * that needs none} instead.</p>
+   * @param out the destination of this chapter's HTML
+   * @param markup the form in which the HTML is written
+   * @param phrases the numbers of the linked phrases, needed if {@code markup}
+   * {@link Markup#sharesTitles() shares titles}
+   * @return the places in {@code out} of the trail links' addresses and titles, or
+   * {@link TrailSlots#NONE NONE} if the header and footer were not written from templates
+   * @throws IOException if {@code out} cannot be written
+   */
+  public TrailSlots writeLocatingTrail(Utf8Sink out, Markup markup, PhraseTable phrases) 
+      throws IOException{
+    
+    int start = chapter.bodyStart();
+    int end = chapter.bodyEnd();
+    if(start < 0 || end < start || !insertionsWithin(start, end)){
+      applyTrail();
+      MarkupWriter writer = new MarkupWriter(out, markup.withoutScripts(), phrases);
+      writeMerged(writer, 0, chapter.content.size());
+      writer.finish();
+      return TrailSlots.NONE;
+    }
+    
+    TrailSlots result = new TrailSlots();
+    byte[][] slots = chapter.chromeSlots(prev, next);
+    (markup.isMinified() ? HtmlChapter.MIN_HEADER_TEMPLATE : HtmlChapter.HEADER_TEMPLATE)
+        .write(out, slots, result::add);
+    
+    MarkupWriter writer = new MarkupWriter(out, markup, phrases);
+    writeMerged(writer, start, end);
+    writer.finish();
+    if(!markup.linksInline()){
+      out.write(LinkScript.scriptElements(getName()));
+    } else if(markup.sharesTitles()){
+      out.write(PhraseTable.SCRIPT_ELEMENT);
+    }
+    
+    (markup.isMinified() ? HtmlChapter.MIN_FOOTER_TEMPLATE : HtmlChapter.FOOTER_TEMPLATE)
+        .write(out, slots, result::add);
+    return result;
+  }
+  
+  /**
+   * <p>Writes this chapter to {@code out} as a well-formed {@link XhtmlWriter XHTML} document
+   * with its anchor tags and trail, for packages such as EPUB whose readers parse chapters as
+   * XML.</p>
+   * @param out the destination of this chapter's XHTML
+   * @throws IOException if {@code out} cannot be written
+   */
+  public void writeXhtml(Utf8Sink out) throws IOException{
+    XhtmlWriter writer = new XhtmlWriter(out, getTitle());
+    for(HtmlEntity h : this){
+      writer.write(h);
+    }
+    writer.finish();
+  }
+  
+  /**
+   * <p>Writes the {@link LinkScript#dataName(String) link data} of this chapter, for a chapter
+   * written with {@link Markup#CLIENT_LINKED client-side linking}: one entry for each anchor, in
+   * the order in which the anchors' opening tags occur.</p>
+   * @param out the destination of the link data
+   * @param phrases the numbers of the linked phrases
+   * @throws IOException if {@code out} cannot be written
+   */
+  public void writeLinkData(Utf8Sink out, PhraseTable phrases) throws IOException{
+    Set<AnchorInfo> written = Collections.newSetFromMap(new IdentityHashMap<>());
+    out.write("LINKS=[");
+    for(HtmlChapter.Insertion insertion : insertions){
+      AnchorInfo a = insertion.anchor;
+      if(a == null || !written.add(a)){
+        continue;
+      }
+      if(written.size() > 1){
+        out.write(',');
+      }
+      out.write('[');
+      out.write(AnchorInfo.locationID(a.position()));
+      out.write(',');
+      out.write(Integer.toString(phrases.id(a.phrase())));
+      out.write(',');
+      PhraseTable.writeJsString(AnchorInfo.address(a.linkTo()), out);
+      out.write(',');
+      out.write(AnchorInfo.locationID(a.linkTo()));
+      out.write(']');
+    }
+    out.write("];\n");
+  }
+  
+  /**
+   * <p>Writes the elements of the chapter's content from {@code start} to {@code end} to
+   * {@code writer}, with the anchor tags merged in. Every anchor tag must go between
+   * {@code start} and {@code end}, inclusive.</p>
+   */
+  private void writeMerged(MarkupWriter writer, int start, int end) throws IOException{
+    int k = 0;
+    for(int i = start; i < end; i++){
+      for(; k < insertions.size() && insertions.get(k).index == i; k++){
+        writer.write(insertions.get(k));
+      }
+      writer.write(chapter.content.get(i));
+    }
+    for(; k < insertions.size(); k++){
+      writer.write(insertions.get(k));
+    }
+  }
+  
+  /**
+   * <p>Puts the {@link #setTrail(String,String) trail} into the header and footer anchors of
+   * {@link #chapter chapter} if it has changed since it was last put there.</p>
+   */
+  private void applyTrail(){
+    if(trailChanged){
+      chapter.setTrail(prev, next);
+      trailChanged = false;
+    }
+  }
+  
+  /**
+   * <p>Returns true if every anchor tag goes between {@code start} and {@code end}, inclusive,
+   * false otherwise.</p>
+   */
+  private boolean insertionsWithin(int start, int end){
+    return insertions.isEmpty() 
+        || (insertions.get(0).index >= start 
+            && insertions.get(insertions.size() - 1).index <= end);
+  }
+  
+  /**
+   * <p>Returns an iterator over the chapter's content with the anchor tags merged in.</p>
+   * @return an iterator over the chapter's content with the anchor tags merged in
+   */
+  @Override
+  public Iterator<HtmlEntity> iterator(){
+    applyTrail();
+    return new Iterator<HtmlEntity>(){
+      
+      private final Iterator<HtmlEntity> content = chapter.iterator();
+      
+      /**
+       * <p>The index in the chapter's content of the next element of the content.</p>
+       */
+      private int position = 0;
+      
+      /**
+       * <p>The index in {@link #insertions insertions} of the next anchor tag.</p>
+       */
+      private int next = 0;
+      
+      @Override
+      public boolean hasNext(){
+        return next < insertions.size() || content.hasNext();
+      }
+      
+      @Override
+      public HtmlEntity next(){
+        if(next < insertions.size() && insertions.get(next).index == position){
+          return insertions.get(next++).tag;
+        } else if(content.hasNext()){
+          position++;
+          return content.next();
+        }
+        throw new NoSuchElementException();
+      }
+    };
+  }
+}
@@ -0,0 +1,90 @@
+package html;
+
+/**
+ * <p>The ways in which the HTML of a {@link LinkedChapter linked chapter} can be written.</p>
+ */
+public enum Markup{
+  
+  /**
+   * <p>The chapter's content as it is, with a full anchor tag, including the phrase as its title,
+   * on every linked phrase.</p>
+   */
+  FULL(false, false, true), 
+  
+  /**
+   * <p>The chapter's content with every run of whitespace that is next to a block-level tag
+   * removed and every other run of whitespace collapsed to a single space, and with
+   * {@link AnchorInfo#shortLocationID(text.Location) short ids} in the anchors.</p>
+   */
+  MINIFIED(true, false, true), 
+  
+  /**
+   * <p>{@link #MINIFIED MINIFIED}, with the title of each anchor replaced by the number of its
+   * phrase in a {@link PhraseTable table of phrases} shared by all the chapters, from which a
+   * script sets the title when the reader points at the anchor.</p>
+   */
+  MINIFIED_SHARED_TITLES(true, true, true), 
+  
+  /**
+   * <p>The chapter's content with no anchor tags at all. The links of each chapter are saved
+   * beside it as {@link LinkScript#dataName(String) link data}, and a {@link LinkScript script}
+   * adds the anchors to the page as the reader scrolls to them. The titles of the anchors come
+   * from the {@link PhraseTable table of phrases}. The whitespace is left as it is, since the
+   * script finds words by counting them in the page's text exactly as the chapter's words were
+   * counted.</p>
+   */
+  CLIENT_LINKED(false, true, false);
+  
+  private final boolean minified;
+  private final boolean sharedTitles;
+  private final boolean inlineLinks;
+  
+  private Markup(boolean minified, boolean sharedTitles, boolean inlineLinks){
+    this.minified = minified;
+    this.sharedTitles = sharedTitles;
+    this.inlineLinks = inlineLinks;
+  }
+  
+  /**
+   * <p>Returns true if chapters written this way have their insignificant whitespace removed and
+   * short anchor ids, false otherwise.</p>
+   * @return true if chapters written this way are minified, false otherwise
+   */
+  public boolean isMinified(){
+    return minified;
+  }
+  
+  /**
+   * <p>Returns true if chapters written this way need a {@link PhraseTable PhraseTable} for the
+   * titles of their anchors, false otherwise.</p>
+   * @return true if chapters written this way need a PhraseTable, false otherwise
+   */
+  public boolean sharesTitles(){
+    return sharedTitles;
+  }
+  
+  /**
+   * <p>Returns true if chapters written this way have their anchor tags in their HTML, false if
+   * the anchors are added by a {@link LinkScript script}.</p>
+   * @return true if chapters written this way have their anchor tags in their HTML
+   */
+  public boolean linksInline(){
+    return inlineLinks;
+  }
+  
+  /**
+   * <p>Returns the closest Markup to this one that needs no script, for a chapter without the
+   * standard header and footer, where no scripts can be loaded.</p>
+   * @return the closest Markup to this one that needs no script
+   */
+  Markup withoutScripts(){
+    switch(this){
+    case MINIFIED_SHARED_TITLES:
+      return MINIFIED;
+    case CLIENT_LINKED:
+      return FULL;
+    default:
+      return this;
+    }
+  }
+}
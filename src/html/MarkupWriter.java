@@ -0,0 +1,141 @@
+package html;
+
+import common.Utf8Sink;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>Writes the elements of a chapter and the anchor tags merged into them to a Utf8Sink in
+ * the form given by a {@link Markup Markup}.</p> <p>When minifying, a run of whitespace
+ * literals is held back until the next element is seen: it is dropped if the element before it
+ * or the element after it is a block-level tag, or if nothing follows it, since a browser does
+ * not render such whitespace, and is otherwise written as a single space.</p>
+ */
+final class MarkupWriter {
+  
+  /**
+   * <p>The {@link Tag#getType() types} of the block-level tags found in chapters.</p>
+   */
+  private static final Set<String> BLOCK_TYPES = new HashSet<>(Arrays.asList(
+      "html", "head", "meta", "link", "title", "body", 
+      Tag.P, Tag.DIV, Tag.TABLE, "tbody", "thead", "tr", "td", "th", Tag.BLOCKQUOTE, 
+      "ul", "ol", "li", "br", "hr"));
+  
+  private final Utf8Sink out;
+  
+  private final Markup markup;
+  
+  private final PhraseTable phrases;
+  
+  /**
+   * <p>True if whitespace has been seen since the last element written.</p>
+   */
+  private boolean pendingSpace = false;
+  
+  /**
+   * <p>True if the last element written was a block-level tag or if nothing has been written
+   * yet.</p>
+   */
+  private boolean afterBlock = true;
+  
+  /**
+   * <p>Constructs a MarkupWriter writing to {@code out} in the form {@code markup}.</p>
+   * @param out the destination of the chapter's HTML
+   * @param markup the form in which the HTML is written
+   * @param phrases the numbers of the phrases, needed if {@code markup}
+   * {@link Markup#sharesTitles() shares titles}
+   */
+  MarkupWriter(Utf8Sink out, Markup markup, PhraseTable phrases){
+    if(markup.sharesTitles() && phrases == null){
+      throw new IllegalArgumentException(markup + " needs a PhraseTable");
+    }
+    this.out = out;
+    this.markup = markup;
+    this.phrases = phrases;
+  }
+  
+  /**
+   * <p>Writes an element of the chapter.</p>
+   * @param h an element of the chapter
+   * @throws IOException if the destination cannot be written
+   */
+  void write(HtmlEntity h) throws IOException{
+    if(!markup.isMinified()){
+      h.write(out);
+      return;
+    }
+    if(isSpace(h)){
+      pendingSpace = true;
+      return;
+    }
+    boolean block = isBlock(h);
+    resolveSpace(block);
+    h.write(out);
+    afterBlock = block;
+  }
+  
+  /**
+   * <p>Writes an anchor tag merged into the chapter, unless the anchors are not
+   * {@link Markup#linksInline() inline}.</p>
+   * @param insertion the anchor tag and the anchor it belongs to
+   * @throws IOException if the destination cannot be written
+   */
+  void write(HtmlChapter.Insertion insertion) throws IOException{
+    if(!markup.linksInline()){
+      return;
+    }
+    if(!markup.isMinified() || insertion.anchor == null){
+      write(insertion.tag);
+      return;
+    }
+    resolveSpace(false);
+    AnchorInfo a = insertion.anchor;
+    out.write("<a id=\"");
+    out.write(AnchorInfo.shortLocationID(a.position()));
+    out.write("\" href=\"");
+    out.write(AnchorInfo.shortHref(a.linkTo()));
+    if(markup.sharesTitles()){
+      out.write("\" " + PhraseTable.ID_ATTRIBUTE + "=\"");
+      out.write(Integer.toString(phrases.id(a.phrase())));
+    } else{
+      out.write("\" title=\"");
+      out.write(a.phrase());
+    }
+    out.write("\">");
+    afterBlock = false;
+  }
+  
+  /**
+   * <p>Drops any whitespace held back, since nothing is written after it in this part of the
+   * chapter.</p>
+   */
+  void finish(){
+    pendingSpace = false;
+  }
+  
+  /**
+   * <p>Writes the whitespace held back, if any, as a single space, unless either the element
+   * before it or the element after it is block-level.</p>
+   */
+  private void resolveSpace(boolean blockNext) throws IOException{
+    if(pendingSpace && !afterBlock && !blockNext){
+      out.write(' ');
+    }
+    pendingSpace = false;
+  }
+  
+  private static boolean isSpace(HtmlEntity h){
+    if(!h.isKind(HtmlEntity.LITERAL)){
+      return false;
+    }
+    char c = ((CharLiteral) h).c;
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+  }
+  
+  private static boolean isBlock(HtmlEntity h){
+    return h.isKind(HtmlEntity.TAG) 
+        && (BLOCK_TYPES.contains(((Tag) h).getType()) || Tag.isHeader(h));
+  }
+}
@@ -0,0 +1,125 @@
+package html;
+
+import common.Utf8Sink;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * <p>A number for each distinct phrase linked in the chapters, so that an anchor in a chapter
+ * written with {@link Markup#MINIFIED_SHARED_TITLES shared titles} can name its phrase by number
+ * instead of repeating the phrase as its title. The phrases are saved once, as a
+ * {@link #writeScript(Utf8Sink) script} that every such chapter loads and that sets an anchor's
+ * title from the table when the reader points at the anchor.</p>
+ */
+public final class PhraseTable {
+  
+  /**
+   * <p>The name of the file of the script written by {@link #writeScript(Utf8Sink) writeScript},
+   * in the same folder as the chapters.</p>
+   */
+  public static final String SCRIPT_NAME = "phrases.js";
+  
+  /**
+   * <p>The element that loads the script, written at the end of the body of every chapter that
+   * {@link Markup#sharesTitles() shares titles}.</p>
+   */
+  static final String SCRIPT_ELEMENT = "<script src=\"" + SCRIPT_NAME + "\" defer></script>";
+  
+  /**
+   * <p>The attribute of an anchor tag holding the number of its phrase.</p>
+   */
+  static final String ID_ATTRIBUTE = "data-t";
+  
+  private static final String SCRIPT_HANDLER = 
+      "document.addEventListener(\"mouseover\",function(e){"
+      + "var a=e.target.closest&&e.target.closest(\"a[" + ID_ATTRIBUTE + "]\");"
+      + "if(a&&!a.title)a.title=PHRASES[a.getAttribute(\"" + ID_ATTRIBUTE + "\")];"
+      + "});\n";
+  
+  /**
+   * <p>Chars that end a line in JavaScript source, even inside a string literal.</p>
+   */
+  private static final char LINE_SEPARATOR = 0x2028;
+  private static final char PARAGRAPH_SEPARATOR = 0x2029;
+  
+  private final List<String> phrases;
+  
+  private final Map<String, Integer> ids;
+  
+  private PhraseTable(List<String> phrases){
+    this.phrases = phrases;
+    this.ids = new HashMap<>();
+    for(String phrase : phrases){
+      ids.put(phrase, ids.size());
+    }
+  }
+  
+  /**
+   * <p>Returns a PhraseTable of the distinct phrases of {@code anchors}, numbered in sorted
+   * order.</p>
+   * @param anchors the anchors whose phrases are numbered
+   * @return a PhraseTable of the phrases of {@code anchors}
+   */
+  public static PhraseTable of(Collection<AnchorInfo> anchors){
+    return new PhraseTable(anchors.stream()
+        .map(AnchorInfo::phrase)
+        .distinct()
+        .sorted()
+        .collect(Collectors.toList()));
+  }
+  
+  /**
+   * <p>Returns the number of {@code phrase}.</p>
+   * @param phrase a phrase in this table
+   * @return the number of {@code phrase}
+   * @throws IllegalArgumentException if {@code phrase} is not in this table
+   */
+  public int id(String phrase){
+    Integer result = ids.get(phrase);
+    if(result == null){
+      throw new IllegalArgumentException("Not in the phrase table: " + phrase);
+    }
+    return result;
+  }
+  
+  /**
+   * <p>Writes the script that holds the phrases and sets the title of an anchor from them.</p>
+   * @param out the destination of the script
+   * @throws IOException if {@code out} cannot be written
+   */
+  public void writeScript(Utf8Sink out) throws IOException{
+    out.write("var PHRASES=[");
+    for(int i = 0; i < phrases.size(); i++){
+      if(i > 0){
+        out.write(',');
+      }
+      writeJsString(phrases.get(i), out);
+    }
+    out.write("];\n");
+    out.write(SCRIPT_HANDLER);
+  }
+  
+  /**
+   * <p>Writes {@code s} as a quoted JavaScript string that is also safe inside an HTML script
+   * element.</p>
+   */
+  static void writeJsString(String s, Utf8Sink out) throws IOException{
+    out.write('"');
+    for(int i = 0; i < s.length(); i++){
+      char c = s.charAt(i);
+      if(c == '"' || c == '\\' || c == '/'){
+        out.write('\\');
+        out.write(c);
+      } else if(c < ' ' || c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR){
+        out.write(String.format("\\u%04x", (int) c));
+      } else{
+        out.write(c);
+      }
+    }
+    out.write('"');
+  }
+}
@@ -0,0 +1,389 @@
+package html;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * <p>An editable list of HtmlEntity kept as a piece table: a sequence of pieces, each of which is
+ * a run of consecutive elements of some source list. Edits never copy the content; they split,
+ * trim, or drop pieces and put inserted elements in an append-only buffer of added elements.</p>
+ * <p>Locating an element is an O(log p) binary search over the start positions of the pieces,
+ * where p is the number of pieces, skipped entirely when the element is in the same piece as, or
+ * a piece next to, the last element located, so scanning the list in either direction costs O(1)
+ * per element.</p> <p>The pieces are kept in an array, so an edit that splits, adds, or drops
+ * pieces shifts the pieces after it and costs O(p), not O(log p); only an edit that keeps the
+ * number of pieces, such as {@link #set(int,HtmlEntity) setting} an element of a writable list,
+ * costs O(1) beyond the search. Start positions are recomputed lazily from the first piece an
+ * edit touched, at O(p) for the first search after the edit. This is still far cheaper than an
+ * edit of the elements themselves, since p grows with the number of edits and not with the size
+ * of the list, and the shifts move only references to pieces.</p>
+ */
+final class PieceTable extends AbstractList<HtmlEntity> implements RandomAccess{
+  
+  /**
+   * <p>A run of {@code length} consecutive elements of {@code source} starting at
+   * {@code offset}.</p>
+   */
+  private static final class Piece{
+    
+    private final List<? extends HtmlEntity> source;
+    private final int offset;
+    private final int length;
+    
+    private Piece(List<? extends HtmlEntity> source, int offset, int length){
+      this.source = source;
+      this.offset = offset;
+      this.length = length;
+    }
+    
+    private HtmlEntity get(int i){
+      return source.get(offset + i);
+    }
+    
+    private Piece head(int length){
+      return new Piece(source, offset, length);
+    }
+    
+    private Piece tail(int start){
+      return new Piece(source, offset + start, length - start);
+    }
+  }
+  
+  private final List<Piece> pieces = new ArrayList<>();
+  
+  /**
+   * <p>{@code starts[k]} is the position in this list of the first element of the {@code k}-th
+   * piece. Only the first {@link #validStarts validStarts} entries are up to date.</p>
+   */
+  private int[] starts = new int[INITIAL_CAPACITY];
+  
+  private int validStarts = 0;
+  
+  private int size = 0;
+  
+  /**
+   * <p>The index of the piece containing the element most recently located.</p>
+   */
+  private int finger = 0;
+  
+  /**
+   * <p>The append-only buffer holding the elements inserted into this list. Replaced by a new,
+   * empty buffer when this list is {@link #copy() copied}, so that a buffer shared with a copy
+   * is never changed again.</p>
+   */
+  private List<HtmlEntity> added = new ArrayList<>();
+  
+  /**
+   * <p>The source lists that this PieceTable may change in place when an element is
+   * {@link #set(int,HtmlEntity) set}. Compared by identity.</p>
+   */
+  private final Set<List<HtmlEntity>> writable =
+      Collections.newSetFromMap(new IdentityHashMap<>());
+  
+  private static final int INITIAL_CAPACITY = 8;
+  
+  /**
+   * <p>Constructs an empty PieceTable, to which content can be added as
+   * {@link #appendView(List) views} of other lists.</p>
+   */
+  PieceTable(){
+    writable.add(added);
+  }
+  
+  /**
+   * <p>Constructs a PieceTable holding the elements of {@code base}, which it takes over: the
+   * PieceTable reads its elements from {@code base} without copying them and may write to it, so
+   * nothing else may change {@code base} afterwards.</p>
+   * @param base the initial content of this list
+   */
+  PieceTable(List<HtmlEntity> base){
+    writable.add(added);
+    if(!base.isEmpty()){
+      writable.add(base);
+      pieces.add(new Piece(base, 0, base.size()));
+      size = base.size();
+    }
+  }
+  
+  /**
+   * <p>Adds all the elements of {@code source} to the end of this list as a
+   * {@link #appendView(List,int,int) view}.</p>
+   * @param source the list whose elements are viewed
+   * @return this PieceTable
+   */
+  PieceTable appendView(List<? extends HtmlEntity> source){
+    return appendView(source, 0, source.size());
+  }
+  
+  /**
+   * <p>Adds the elements of {@code source} from {@code from} (inclusive) to {@code to}
+   * (exclusive) to the end of this list without copying them. This PieceTable never changes
+   * {@code source}: {@link #set(int,HtmlEntity) setting} one of these elements replaces it in this
+   * list only. Nothing else may change {@code source} while this PieceTable is in use. If
+   * {@code source} is itself a PieceTable, this PieceTable views the lists underlying that range
+   * of it directly.</p>
+   * @param source the list whose elements are viewed
+   * @param from the inclusive lower bound of the viewed region of {@code source}
+   * @param to the exclusive upper bound of the viewed region of {@code source}
+   * @return this PieceTable
+   */
+  PieceTable appendView(List<? extends HtmlEntity> source, int from, int to){
+    if(from < 0 || to > source.size() || from > to){
+      throw new IndexOutOfBoundsException(
+          "fromIndex " + from + ", toIndex " + to + ", size " + source.size());
+    }
+    
+    if(source instanceof PieceTable){
+      PieceTable table = (PieceTable) source;
+      if(from < to){
+        int k = table.locate(from);
+        int i = from - table.starts[k];
+        for(int remaining = to - from; remaining > 0; k++, i = 0){
+          Piece piece = table.pieces.get(k);
+          int length = Math.min(piece.length - i, remaining);
+          appendPiece(new Piece(piece.source, piece.offset + i, length));
+          remaining -= length;
+        }
+      }
+    } else{
+      appendPiece(new Piece(source, from, to - from));
+    }
+    modCount++;
+    return this;
+  }
+  
+  /**
+   * <p>Adds {@code piece} after the last piece, merging the two if {@code piece} continues the
+   * last piece in the same source list.</p>
+   */
+  private void appendPiece(Piece piece){
+    if(piece.length == 0){
+      return;
+    }
+    size += piece.length;
+    
+    int last = pieces.size() - 1;
+    if(last >= 0){
+      Piece before = pieces.get(last);
+      if(before.source == piece.source && before.offset + before.length == piece.offset){
+        replacePieces(last, last + 1, Collections.singletonList(
+            new Piece(before.source, before.offset, before.length + piece.length)));
+        return;
+      }
+    }
+    replacePieces(last + 1, last + 1, Collections.singletonList(piece));
+  }
+  
+  /**
+   * <p>Returns a PieceTable with the same elements as this one that shares this one's pieces
+   * instead of copying its elements, so that copying costs O(p) for p pieces regardless of the
+   * size of the list. Afterward, neither list changes any of the source lists they share:
+   * {@link #set(int,HtmlEntity) setting} an element of either list copies the new element into
+   * that list's own buffer of added elements instead, so changes to one list never show in the
+   * other.</p>
+   * @return a PieceTable with the same elements as this one
+   */
+  PieceTable copy(){
+    PieceTable result = new PieceTable();
+    result.pieces.addAll(pieces);
+    result.size = size;
+    
+    writable.clear();
+    added = new ArrayList<>();
+    writable.add(added);
+    
+    return result;
+  }
+  
+  @Override
+  public int size(){
+    return size;
+  }
+  
+  @Override
+  public HtmlEntity get(int index){
+    checkIndex(index, size);
+    int k = locate(index);
+    return pieces.get(k).get(index - starts[k]);
+  }
+  
+  @Override
+  @SuppressWarnings("unchecked")
+  public HtmlEntity set(int index, HtmlEntity element){
+    checkIndex(index, size);
+    int k = locate(index);
+    Piece piece = pieces.get(k);
+    int i = index - starts[k];
+    HtmlEntity old = piece.get(i);
+    
+    if(writable.contains(piece.source)){
+      //only base and added lists, both List<HtmlEntity>, are writable
+      ((List<HtmlEntity>) piece.source).set(piece.offset + i, element);
+    } else{
+      Piece single = append(element);
+      List<Piece> replacement = new ArrayList<>(3);
+      if(i > 0){
+        replacement.add(piece.head(i));
+      }
+      replacement.add(single);
+      if(i + 1 < piece.length){
+        replacement.add(piece.tail(i + 1));
+      }
+      replacePieces(k, k + 1, replacement);
+    }
+    return old;
+  }
+  
+  @Override
+  public void add(int index, HtmlEntity element){
+    checkIndex(index, size + 1);
+    int k = splitAt(index);
+    
+    if(k > 0){
+      Piece before = pieces.get(k - 1);
+      if(before.source == added && before.offset + before.length == added.size()){
+        added.add(element);
+        replacePieces(k - 1, k, Collections.singletonList(
+            new Piece(added, before.offset, before.length + 1)));
+        size++;
+        modCount++;
+        return;
+      }
+    }
+    
+    replacePieces(k, k, Collections.singletonList(append(element)));
+    size++;
+    modCount++;
+  }
+  
+  @Override
+  public HtmlEntity remove(int index){
+    HtmlEntity old = get(index);
+    removeRange(index, index + 1);
+    return old;
+  }
+  
+  @Override
+  protected void removeRange(int fromIndex, int toIndex){
+    if(fromIndex < 0 || toIndex > size || fromIndex > toIndex){
+      throw new IndexOutOfBoundsException(
+          "fromIndex " + fromIndex + ", toIndex " + toIndex + ", size " + size);
+    }
+    if(fromIndex == toIndex){
+      return;
+    }
+    
+    int lo = splitAt(fromIndex);
+    int hi = splitAt(toIndex);
+    
+    replacePieces(lo, hi, Collections.emptyList());
+    size -= toIndex - fromIndex;
+    modCount++;
+  }
+  
+  /**
+   * <p>Puts {@code element} at the end of the buffer of added elements and returns a piece
+   * holding just that element.</p>
+   */
+  private Piece append(HtmlEntity element){
+    added.add(element);
+    return new Piece(added, added.size() - 1, 1);
+  }
+  
+  /**
+   * <p>Ensures that a piece starts at position {@code index} in this list, splitting the piece
+   * containing it if necessary, and returns the index of that piece, or the number of pieces if
+   * {@code index} is the size of this list.</p>
+   */
+  private int splitAt(int index){
+    if(index == size){
+      return pieces.size();
+    }
+    int k = locate(index);
+    int i = index - starts[k];
+    if(i == 0){
+      return k;
+    }
+    Piece piece = pieces.get(k);
+    replacePieces(k, k + 1, Arrays.asList(piece.head(i), piece.tail(i)));
+    return k + 1;
+  }
+  
+  /**
+   * <p>Replaces the pieces from {@code from} (inclusive) to {@code to} (exclusive) with
+   * {@code replacement} and marks the start positions from {@code from} on out of date.</p>
+   */
+  private void replacePieces(int from, int to, List<Piece> replacement){
+    List<Piece> region = pieces.subList(from, to);
+    if(region.size() == replacement.size()){
+      for(int i = 0; i < replacement.size(); i++){
+        region.set(i, replacement.get(i));
+      }
+    } else{
+      region.clear();
+      pieces.addAll(from, replacement);
+    }
+    validStarts = Math.min(validStarts, from);
+    finger = Math.min(finger, Math.max(0, from - 1));
+  }
+  
+  /**
+   * <p>Returns the index of the piece containing the element at position {@code index} in this
+   * list.</p>
+   */
+  private int locate(int index){
+    if(finger < validStarts && contains(finger, index)){
+      return finger;
+    }
+    if(finger + 1 < validStarts && contains(finger + 1, index)){
+      return ++finger;
+    }
+    if(finger > 0 && finger - 1 < validStarts && contains(finger - 1, index)){
+      return --finger;
+    }
+    
+    updateStarts();
+    int lo = 0;
+    int hi = pieces.size() - 1;
+    while(lo < hi){
+      int mid = (lo + hi + 1) >>> 1;
+      if(starts[mid] <= index){
+        lo = mid;
+      } else{
+        hi = mid - 1;
+      }
+    }
+    return finger = lo;
+  }
+  
+  private boolean contains(int k, int index){
+    return starts[k] <= index && index < starts[k] + pieces.get(k).length;
+  }
+  
+  /**
+   * <p>Brings every entry of {@link #starts starts} up to date.</p>
+   */
+  private void updateStarts(){
+    if(starts.length < pieces.size()){
+      starts = Arrays.copyOf(starts, Math.max(pieces.size(), 2 * starts.length));
+    }
+    for(int k = validStarts; k < pieces.size(); k++){
+      starts[k] = k == 0
+          ? 0
+          : starts[k - 1] + pieces.get(k - 1).length;
+    }
+    validStarts = pieces.size();
+  }
+  
+  private static void checkIndex(int index, int bound){
+    if(index < 0 || index >= bound){
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + bound);
+    }
+  }
+}
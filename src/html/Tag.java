@@ -1,5 +1,7 @@
 package html;
 
+import common.Utf8Sink;
+import java.io.IOException;
 import java.util.List;
 import java.util.OptionalInt;
 import java.util.stream.Collectors;
@@ -202,9 +204,18 @@ public class Tag extends HtmlEntity {
    * @param content the literal text of this tag inside the opening and closing angle brackets.
    */
 	public Tag(String content) {
+		super(TAG);
 		this.content = content;
 	}
 	
+  /**
+   * <p>Returns the literal text of this tag inside its opening and closing angle brackets.</p>
+   * @return the literal text of this tag inside its opening and closing angle brackets
+   */
+	String content(){
+		return content;
+	}
+	
   /**
    * <p>Returns the value of the specified attribute if this tag has that attribute, null 
    * otherwise.</p>
@@ -281,6 +292,13 @@ public class Tag extends HtmlEntity {
 		return START_CHAR + content + END_CHAR;
 	}
 	
+	@Override
+	public void write(Utf8Sink out) throws IOException{
+		out.write(START_CHAR);
+		out.write(content);
+		out.write(END_CHAR);
+	}
+	
   /**
    * <p>The beginning of the literal plaintext version of a Tag, an opening angle bracket, the
    * less-than symbol.</p>
@@ -0,0 +1,187 @@
+package html;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>A text-only projection of a list of HtmlEntity: the characters of its character-type
+ * elements in order, with {@link Tag Tags} left out, and a map from each projected character back
+ * to the index in the list of the element it came from.</p> <p>Literal text is sought in the
+ * projected characters with a Boyer-Moore-Horspool scan instead of being matched one HtmlEntity
+ * at a time at every index in the list.</p>
+ */
+class TextProjection {
+  
+  /**
+   * <p>Stands in for a {@link CharCode CharCode} that does not stand for a known character in the
+   * projected text. Such a CharCode never {@link CharCode#match(char) matches} a literal char, and
+   * this noncharacter never appears in literal text being sought.</p>
+   */
+  private static final char NO_MATCH = '\uFFFF';
+  
+  /**
+   * <p>The size of the bad-character shift tables. Characters are hashed into the table by their
+   * low bits; characters that collide share the smallest shift among them, which keeps every
+   * shift safe.</p>
+   */
+  private static final int SHIFT_TABLE_SIZE = 256;
+  
+  private static final int SHIFT_TABLE_MASK = SHIFT_TABLE_SIZE - 1;
+  
+  /**
+   * <p>The characters of the character-type elements of the projected list, in order.</p>
+   */
+  private final char[] text;
+  
+  /**
+   * <p>{@code entityIndex[p]} is the index in the projected list of the element whose character
+   * is {@code text[p]}. Strictly increasing.</p>
+   */
+  private final int[] entityIndex;
+  
+  /**
+   * <p>Constructs a TextProjection of {@code content}.</p>
+   * @param content the list of HtmlEntity whose characters are projected
+   */
+  TextProjection(List<HtmlEntity> content){
+    char[] text = new char[content.size()];
+    int[] entityIndex = new int[content.size()];
+    int length = 0;
+    
+    for(int i = 0; i < content.size(); i++){
+      HtmlEntity h = content.get(i);
+      if(h instanceof CharLiteral){
+        text[length] = ((CharLiteral) h).c;
+        entityIndex[length++] = i;
+      } else if(h instanceof CharCode){
+        int decoded = ((CharCode) h).decoded();
+        text[length] = decoded == CharacterReferences.UNKNOWN 
+            ? NO_MATCH 
+            : (char) decoded;
+        entityIndex[length++] = i;
+      }
+    }
+    
+    this.text = Arrays.copyOf(text, length);
+    this.entityIndex = Arrays.copyOf(entityIndex, length);
+  }
+  
+  /**
+   * <p>Returns the index in the projected list of the first element after {@code after} at which
+   * {@code literal} starts, or -1 if there is no such element.</p>
+   * @param literal the literal text to be sought
+   * @param after exclusive lower bound for the index of the element at which {@code literal}
+   * starts
+   * @return the index in the projected list of the first element after {@code after} at which
+   * {@code literal} starts, or -1 if there is no such element
+   */
+  int indexOf(String literal, int after){
+    return indexOf(literal, after, Integer.MAX_VALUE);
+  }
+  
+  /**
+   * <p>Returns the index in the projected list of the first element after {@code after} and
+   * before {@code before} at which {@code literal} starts, or -1 if there is no such
+   * element.</p>
+   * @param literal the literal text to be sought
+   * @param after exclusive lower bound for the index of the element at which {@code literal}
+   * starts
+   * @param before exclusive upper bound for the index of the element at which {@code literal}
+   * starts
+   * @return the index in the projected list of the first element after {@code after} and before
+   * {@code before} at which {@code literal} starts, or -1 if there is no such element
+   */
+  int indexOf(String literal, int after, int before){
+    int from = firstPositionAfter(after);
+    int to = Math.min(firstPositionAfter(before - 1) - 1 + literal.length(), text.length);
+    int p = search(literal.toCharArray(), from, to);
+    return p < 0
+        ? p
+        : entityIndex[p];
+  }
+  
+  /**
+   * <p>Returns the index in the projected list of the last element before {@code before} at
+   * which {@code literal} starts, or -1 if there is no such element.</p>
+   * @param literal the literal text to be sought
+   * @param before exclusive upper bound for the index of the element at which {@code literal}
+   * starts
+   * @return the index in the projected list of the last element before {@code before} at which
+   * {@code literal} starts, or -1 if there is no such element
+   */
+  int lastIndexOf(String literal, int before){
+    int to = Math.min(firstPositionAfter(before - 1) - 1 + literal.length(), text.length);
+    int p = searchBackward(literal.toCharArray(), 0, to);
+    return p < 0
+        ? p
+        : entityIndex[p];
+  }
+  
+  /**
+   * <p>Returns the position in the projected text of the first character whose element is after
+   * {@code index} in the projected list, or the length of the projected text if there is no such
+   * character.</p>
+   */
+  private int firstPositionAfter(int index){
+    int p = Arrays.binarySearch(entityIndex, index);
+    return p >= 0
+        ? p + 1
+        : -(p + 1);
+  }
+  
+  /**
+   * <p>Returns the first position in {@code [from, to - pattern.length]} of the projected text at
+   * which {@code pattern} occurs, or -1 if it occurs nowhere in that range.</p>
+   */
+  private int search(char[] pattern, int from, int to){
+    int m = pattern.length;
+    if(m == 0){
+      return from < to ? from : -1;
+    }
+    
+    int[] shift = new int[SHIFT_TABLE_SIZE];
+    Arrays.fill(shift, m);
+    for(int j = 0; j < m - 1; j++){
+      shift[pattern[j] & SHIFT_TABLE_MASK] = m - 1 - j;
+    }
+    
+    for(int s = from; s <= to - m; s += shift[text[s + m - 1] & SHIFT_TABLE_MASK]){
+      int j = m - 1;
+      while(j >= 0 && text[s + j] == pattern[j]){
+        j--;
+      }
+      if(j < 0){
+        return s;
+      }
+    }
+    return -1;
+  }
+  
+  /**
+   * <p>Returns the last position in {@code [from, to - pattern.length]} of the projected text at
+   * which {@code pattern} occurs, or -1 if it occurs nowhere in that range.</p>
+   */
+  private int searchBackward(char[] pattern, int from, int to){
+    int m = pattern.length;
+    if(m == 0){
+      return from < to ? to - 1 : -1;
+    }
+    
+    int[] shift = new int[SHIFT_TABLE_SIZE];
+    Arrays.fill(shift, m);
+    for(int j = m - 1; j > 0; j--){
+      shift[pattern[j] & SHIFT_TABLE_MASK] = j;
+    }
+    
+    for(int s = to - m; s >= from; s -= shift[text[s] & SHIFT_TABLE_MASK]){
+      int j = 0;
+      while(j < m && text[s + j] == pattern[j]){
+        j++;
+      }
+      if(j == m){
+        return s;
+      }
+    }
+    return -1;
+  }
+}
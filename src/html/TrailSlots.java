@@ -0,0 +1,166 @@
+package html;
+
+import common.Utf8Sink;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <p>The places in a written chapter file of the addresses and titles of the previous and next
+ * chapters in its header and footer. With them, a file written for one trail can be made the
+ * file for another by splicing new values into those bytes, without linking and rendering the
+ * chapter again.</p> <p>A TrailSlots is recorded while a
+ * {@link LinkedChapter#writeLocatingTrail(Utf8Sink) linked chapter is written} and can be
+ * {@link #format() formatted} to be saved with the file and {@link #parse(String) parsed} back
+ * later.</p>
+ */
+public final class TrailSlots {
+  
+  /**
+   * <p>The TrailSlots of a file whose trail links are not known, which cannot be
+   * {@link #patch(byte[],String,String,Utf8Sink) patched}.</p>
+   */
+  public static final TrailSlots NONE = new TrailSlots();
+  
+  /**
+   * <p>Separates the slots in the {@link #format() formatted} TrailSlots.</p>
+   */
+  private static final String SLOT_DELIM = " ";
+  
+  /**
+   * <p>Separates the number, position, and length of a slot in the {@link #format() formatted}
+   * TrailSlots.</p>
+   */
+  private static final String FIELD_DELIM = ":";
+  
+  /**
+   * <p>The number of trail slots in the standard header and footer together.</p>
+   */
+  private static final int INITIAL_CAPACITY = 8;
+  
+  private int[] slots = new int[INITIAL_CAPACITY];
+  private long[] positions = new long[INITIAL_CAPACITY];
+  private int[] lengths = new int[INITIAL_CAPACITY];
+  private int count = 0;
+  
+  TrailSlots(){
+  }
+  
+  /**
+   * <p>Adds the value of {@code slot} written at {@code position} with {@code length} bytes, if
+   * {@code slot} is a {@link HtmlChapter#isTrailSlot(int) trail slot}. Slots must be added in
+   * the order in which they were written.</p>
+   */
+  void add(int slot, long position, int length){
+    if(!HtmlChapter.isTrailSlot(slot)){
+      return;
+    }
+    if(count == slots.length){
+      slots = Arrays.copyOf(slots, 2 * count);
+      positions = Arrays.copyOf(positions, 2 * count);
+      lengths = Arrays.copyOf(lengths, 2 * count);
+    }
+    slots[count] = slot;
+    positions[count] = position;
+    lengths[count] = length;
+    count++;
+  }
+  
+  /**
+   * <p>Returns the number of trail slots in the file.</p>
+   * @return the number of trail slots in the file
+   */
+  public int count(){
+    return count;
+  }
+  
+  /**
+   * <p>Writes {@code file}, which must be the content of the file in which these slots were
+   * recorded, to {@code out} with the value of each slot replaced by its value for a trail from
+   * {@code prev} to {@code next}, and returns the places of the slots in what was written.</p>
+   * @param file the content of the file in which these slots were recorded
+   * @param prev the name of the file of the previous chapter
+   * @param next the name of the file of the next chapter
+   * @param out the destination of the patched file
+   * @return the places of the trail slots in the patched file
+   * @throws IllegalStateException if there are no slots to patch
+   * @throws IllegalArgumentException if the slots do not fit in {@code file}
+   * @throws IOException if {@code out} cannot be written
+   */
+  public TrailSlots patch(byte[] file, String prev, String next, Utf8Sink out) throws IOException{
+    if(count == 0){
+      throw new IllegalStateException("There are no trail slots to patch");
+    }
+    if(!fits(file.length)){
+      throw new IllegalArgumentException("The trail slots do not fit in " + file.length + " bytes");
+    }
+    
+    TrailSlots result = new TrailSlots();
+    int from = 0;
+    for(int i = 0; i < count; i++){
+      out.write(file, from, (int) positions[i] - from);
+      byte[] value = HtmlChapter.trailSlot(slots[i], prev, next);
+      result.add(slots[i], out.position(), value.length);
+      out.write(value);
+      from = (int) positions[i] + lengths[i];
+    }
+    out.write(file, from, file.length - from);
+    return result;
+  }
+  
+  /**
+   * <p>Returns true if the slots are in order, do not overlap, and end within {@code size}
+   * bytes, false otherwise.</p>
+   */
+  private boolean fits(int size){
+    long from = 0;
+    for(int i = 0; i < count; i++){
+      if(positions[i] < from){
+        return false;
+      }
+      from = positions[i] + lengths[i];
+    }
+    return from <= size;
+  }
+  
+  /**
+   * <p>Returns this TrailSlots as text that {@link #parse(String) parse} reads back.</p>
+   * @return this TrailSlots as text
+   */
+  public String format(){
+    StringBuilder result = new StringBuilder();
+    for(int i = 0; i < count; i++){
+      if(i > 0){
+        result.append(SLOT_DELIM);
+      }
+      result.append(slots[i])
+          .append(FIELD_DELIM).append(positions[i])
+          .append(FIELD_DELIM).append(lengths[i]);
+    }
+    return result.toString();
+  }
+  
+  /**
+   * <p>Returns the TrailSlots {@link #format() formatted} as {@code s}.</p>
+   * @param s a formatted TrailSlots
+   * @return the TrailSlots formatted as {@code s}
+   * @throws IllegalArgumentException if {@code s} is not a formatted TrailSlots
+   */
+  public static TrailSlots parse(String s){
+    TrailSlots result = new TrailSlots();
+    if(s.isEmpty()){
+      return result;
+    }
+    for(String slot : s.split(SLOT_DELIM)){
+      String[] fields = slot.split(FIELD_DELIM);
+      if(fields.length != 3){
+        throw new IllegalArgumentException("Not a trail slot: " + slot);
+      }
+      int number = Integer.parseInt(fields[0]);
+      if(!HtmlChapter.isTrailSlot(number)){
+        throw new IllegalArgumentException("Not a trail slot: " + slot);
+      }
+      result.add(number, Long.parseLong(fields[1]), Integer.parseInt(fields[2]));
+    }
+    return result;
+  }
+}
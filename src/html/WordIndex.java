@@ -0,0 +1,106 @@
+package html;
+
+import java.util.Arrays;
+import java.util.List;
+import text.Phrase;
+import text.WordScan;
+
+/**
+ * <p>The positions of the words of a list of HtmlEntity: for each word, the index in the list of
+ * its first character and of its last character. A word is a maximal run of
+ * {@link Phrase#isPhraseChar(char) word characters} among the character-type elements of the
+ * list, with {@link Tag Tags} ignored, which matches the words that a {@link WordScan WordScan}
+ * finds in the list's plaintext.</p> <p>The positions are found in one pass when the index is
+ * built, after which finding a word is an array lookup.</p>
+ */
+final class WordIndex {
+  
+  /**
+   * <p>{@code starts[w]} is the index in the list of the first character of the {@code w}-th
+   * word.</p>
+   */
+  private final int[] starts;
+  
+  /**
+   * <p>{@code lasts[w]} is the index in the list of the last character of the {@code w}-th
+   * word.</p>
+   */
+  private final int[] lasts;
+  
+  private WordIndex(int[] starts, int[] lasts){
+    this.starts = starts;
+    this.lasts = lasts;
+  }
+  
+  /**
+   * <p>Returns a WordIndex of the words of {@code content} at or after {@code from}.</p>
+   * @param content the list whose words are indexed
+   * @param from the index in {@code content} at which to start looking for words
+   * @return a WordIndex of the words of {@code content} at or after {@code from}
+   */
+  static WordIndex of(List<HtmlEntity> content, int from){
+    int[] starts = new int[content.size() / 2 + 1];
+    int[] lasts = new int[content.size() / 2 + 1];
+    int count = 0;
+    
+    boolean inWord = false;
+    int last = 0;
+    for(int i = from; i < content.size(); i++){
+      HtmlEntity h = content.get(i);
+      if(!h.isKind(HtmlEntity.CHARACTER)){
+        continue;
+      }
+      
+      boolean isWord = isWord(h);
+      if(isWord){
+        if(!inWord){
+          starts[count] = i;
+        }
+        last = i;
+      } else if(inWord){
+        lasts[count++] = last;
+      }
+      inWord = isWord;
+    }
+    if(inWord){
+      lasts[count++] = last;
+    }
+    
+    return new WordIndex(Arrays.copyOf(starts, count), Arrays.copyOf(lasts, count));
+  }
+  
+  /**
+   * <p>Returns true if {@code h} is a literal word character, false otherwise.</p>
+   * @param h the HtmlEntity to be assessed
+   * @return true if {@code h} is a literal word character, false otherwise
+   */
+  private static boolean isWord(HtmlEntity h){
+    return h.isKind(HtmlEntity.LITERAL) && Phrase.isPhraseChar(((CharLiteral) h).c);
+  }
+  
+  /**
+   * <p>Returns the number of words indexed.</p>
+   * @return the number of words indexed
+   */
+  int count(){
+    return starts.length;
+  }
+  
+  /**
+   * <p>Returns the index in the list of the first character of the {@code w}-th word.</p>
+   * @param w the index of a word
+   * @return the index in the list of the first character of the {@code w}-th word
+   */
+  int start(int w){
+    return starts[w];
+  }
+  
+  /**
+   * <p>Returns the index in the list just past the last character of the {@code w}-th word.</p>
+   * @param w the index of a word
+   * @return the index in the list just past the last character of the {@code w}-th word
+   */
+  int end(int w){
+    return lasts[w] + 1;
+  }
+}
@@ -0,0 +1,301 @@
+package html;
+
+import common.Utf8Sink;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Writes the elements of a chapter to a Utf8Sink as a well-formed XHTML document, for
+ * packages such as EPUB whose readers parse chapters as XML rather than as HTML.</p> <p>The
+ * chapters are ordinary HTML, so their tags are rewritten as they pass: the root element gets the
+ * XHTML namespace, the head gets the title it must have, empty elements are closed in place,
+ * attributes are quoted and given values, and a repeated attribute or id is dropped. The open
+ * elements are tracked so that a closing tag closes any elements left open inside it, a closing
+ * tag with no open element to close is dropped, elements that HTML closes implicitly (such as a
+ * paragraph before a table) are closed explicitly, and everything still open at the end is
+ * closed. Character references other than the five that XML defines are written by number.</p>
+ */
+final class XhtmlWriter {
+  
+  static final String NAMESPACE = "http://www.w3.org/1999/xhtml";
+  
+  private static final String PROLOG =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!DOCTYPE html>\n";
+  
+  private static final String ROOT = "html";
+  
+  private static final String HEAD = "head";
+  
+  private static final String BODY = "body";
+  
+  /**
+   * <p>The {@link Tag#getType() types} of the elements that never have content, which XHTML
+   * writes as a single self-closed tag.</p>
+   */
+  private static final Set<String> VOID_TYPES = new HashSet<>(Arrays.asList(
+      "area", "base", "br", "col", "embed", "hr", Tag.IMG, "input", "link", "meta", "param",
+      "source", "track", "wbr"));
+  
+  /**
+   * <p>The types of the elements whose opening tag closes an open paragraph in HTML.</p>
+   */
+  private static final Set<String> CLOSES_P = new HashSet<>(Arrays.asList(
+      "address", "article", "aside", Tag.BLOCKQUOTE, Tag.DIV, "dl", "fieldset", "footer",
+      "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr", "ol", Tag.P, "pre",
+      "section", Tag.TABLE, "ul"));
+  
+  /**
+   * <p>An attribute in the text of a tag: its name, then its value in double quotes, in single
+   * quotes, or unquoted, or no value at all.</p>
+   */
+  private static final Pattern ATTRIBUTE = Pattern.compile(
+      "([^\\s=/\"'<>]+)(?:\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'<>`=]+)))?");
+  
+  private static final Pattern XML_NAME = Pattern.compile("[A-Za-z_][-A-Za-z0-9_.]*");
+  
+  /**
+   * <p>A character reference in the value of an attribute.</p>
+   */
+  private static final Pattern REFERENCE = Pattern.compile("&(#?[A-Za-z0-9]+);");
+  
+  private final Utf8Sink out;
+  
+  private final String title;
+  
+  /**
+   * <p>The types of the elements open at the current point, innermost first.</p>
+   */
+  private final Deque<String> open = new ArrayDeque<>();
+  
+  /**
+   * <p>The ids given to elements so far, since an id must be unique in the document.</p>
+   */
+  private final Set<String> ids = new HashSet<>();
+  
+  /**
+   * <p>True once the root element has been opened, after which nothing is written outside
+   * it.</p>
+   */
+  private boolean rootOpened = false;
+  
+  /**
+   * <p>Constructs an XhtmlWriter writing a document titled {@code title} to {@code out}, and
+   * writes the XML declaration and document type.</p>
+   * @param out the destination of the document
+   * @param title the title of the document, given in its head
+   * @throws IOException if {@code out} cannot be written
+   */
+  XhtmlWriter(Utf8Sink out, String title) throws IOException{
+    this.out = out;
+    this.title = title;
+    out.write(PROLOG);
+  }
+  
+  /**
+   * <p>Writes an element of the chapter.</p>
+   * @param h an element of the chapter
+   * @throws IOException if the destination cannot be written
+   */
+  void write(HtmlEntity h) throws IOException{
+    if(h.isKind(HtmlEntity.TAG)){
+      writeTag(((Tag) h).content());
+    } else if(!open.isEmpty()){
+      if(h.isKind(HtmlEntity.LITERAL)){
+        writeChar(((CharLiteral) h).c);
+      } else{
+        writeReference((CharCode) h);
+      }
+    }
+  }
+  
+  /**
+   * <p>Closes every element still open.</p>
+   * @throws IOException if the destination cannot be written
+   */
+  void finish() throws IOException{
+    while(!open.isEmpty()){
+      close();
+    }
+  }
+  
+  private void writeTag(String content) throws IOException{
+    if(content.isEmpty() || content.charAt(0) == '!' || content.charAt(0) == '?'){
+      //comments, doctypes, and processing instructions of the source are not carried over
+      return;
+    }
+    
+    boolean closing = content.charAt(0) == Tag.CLOSE;
+    int nameStart = closing ? 1 : 0;
+    int nameEnd = nameStart;
+    while(nameEnd < content.length() && Character.isLetterOrDigit(content.charAt(nameEnd))){
+      nameEnd++;
+    }
+    String type = content.substring(nameStart, nameEnd).toLowerCase(Locale.ROOT);
+    if(type.isEmpty()){
+      return;
+    }
+    
+    if(closing){
+      if(open.contains(type)){
+        String closed;
+        do{
+          closed = close();
+        } while(!type.equals(closed));
+      }
+      return;
+    }
+    
+    if(open.isEmpty()){
+      if(rootOpened){
+        return;
+      }
+      if(!ROOT.equals(type)){
+        //a document without the standard header still needs a root, head, and body
+        writeTag(ROOT);
+        writeTag(HEAD);
+        writeTag(Tag.CLOSE + HEAD);
+        writeTag(BODY);
+      }
+    }
+    if("meta".equals(type) && content.contains("http-equiv")){
+      //XML declares its own encoding
+      return;
+    }
+    closeImplied(type);
+    
+    out.write(Tag.START_CHAR);
+    out.write(type);
+    if(ROOT.equals(type)){
+      out.write(" xmlns=\"" + NAMESPACE + "\"");
+      rootOpened = true;
+    }
+    writeAttributes(content.substring(nameEnd));
+    if(VOID_TYPES.contains(type) || content.charAt(content.length() - 1) == Tag.CLOSE){
+      out.write("/>");
+      return;
+    }
+    out.write(Tag.END_CHAR);
+    open.push(type);
+    
+    if(HEAD.equals(type)){
+      out.write("<title>");
+      writeText(title);
+      out.write("</title>");
+    }
+  }
+  
+  /**
+   * <p>Closes the open elements that HTML closes implicitly when an element of type
+   * {@code type} is opened.</p>
+   */
+  private void closeImplied(String type) throws IOException{
+    if(CLOSES_P.contains(type) && Tag.P.equals(open.peek())){
+      close();
+    } else if("li".equals(type) && "li".equals(open.peek())){
+      close();
+    } else if(("td".equals(type) || "th".equals(type))
+        && ("td".equals(open.peek()) || "th".equals(open.peek()))){
+      close();
+    } else if("tr".equals(type)){
+      while("td".equals(open.peek()) || "th".equals(open.peek()) || "tr".equals(open.peek())){
+        close();
+      }
+    }
+  }
+  
+  /**
+   * <p>Closes the innermost open element and returns its type.</p>
+   */
+  private String close() throws IOException{
+    String type = open.pop();
+    out.write("</");
+    out.write(type);
+    out.write(Tag.END_CHAR);
+    return type;
+  }
+  
+  private void writeAttributes(String text) throws IOException{
+    Set<String> names = new HashSet<>();
+    for(Matcher m = ATTRIBUTE.matcher(text); m.find();){
+      String name = m.group(1).toLowerCase(Locale.ROOT);
+      if(!XML_NAME.matcher(name).matches() || name.startsWith("xmlns") || !names.add(name)){
+        continue;
+      }
+      String value = m.group(2) != null ? m.group(2)
+          : m.group(3) != null ? m.group(3)
+          : m.group(4) != null ? m.group(4)
+          : name;
+      if("id".equals(name) && !ids.add(value)){
+        continue;
+      }
+      
+      out.write(' ');
+      out.write(name);
+      out.write("=\"");
+      writeAttributeValue(value);
+      out.write('"');
+    }
+  }
+  
+  /**
+   * <p>Writes {@code value} escaped for a double-quoted attribute, keeping the character
+   * references in it.</p>
+   */
+  private void writeAttributeValue(String value) throws IOException{
+    Matcher m = REFERENCE.matcher(value);
+    int from = 0;
+    while(m.find()){
+      writeText(value.substring(from, m.start()));
+      writeReference(new CharCode(m.group(1)));
+      from = m.end();
+    }
+    writeText(value.substring(from));
+  }
+  
+  private void writeText(String text) throws IOException{
+    for(int i = 0; i < text.length(); i++){
+      writeChar(text.charAt(i));
+    }
+  }
+  
+  private void writeChar(char c) throws IOException{
+    switch(c){
+    case '<':
+      out.write("&lt;");
+      break;
+    case '&':
+      out.write("&amp;");
+      break;
+    case '"':
+      out.write("&quot;");
+      break;
+    default:
+      if(c >= ' ' || c == '\t' || c == '\n' || c == '\r'){
+        out.write(c);
+      }
+    }
+  }
+  
+  /**
+   * <p>Writes {@code code} as the reference XML defines for it, as a numeric reference if XML
+   * does not define it, or as text if it cannot be decoded.</p>
+   */
+  private void writeReference(CharCode code) throws IOException{
+    if(code.equals(CharCode.LT) || code.equals(CharCode.GT) || code.equals(CharCode.AMP)){
+      code.write(out);
+    } else if(code.decoded() == CharacterReferences.UNKNOWN){
+      writeText(code.toString());
+    } else{
+      out.write("&#");
+      out.write(Integer.toString(code.decoded()));
+      out.write(';');
+    }
+  }
+}
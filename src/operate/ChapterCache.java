@@ -0,0 +1,164 @@
+package operate;
+
+import html.HtmlBook;
+import html.HtmlChapter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>The cleaned and split chapters of one HTML book, saved in {@link Folder#HTML_CHAPTERS
+ * HTML_CHAPTERS} so that later runs can skip {@link HtmlBook#cleanAndSplit() cleaning and
+ * splitting} the book. Saved chapters are keyed by a hash of the book's source file and by the
+ * {@link HtmlBook#CLEANING_VERSION version} of the cleaning rules, and are only loaded if both
+ * still match.</p>
+ */
+class ChapterCache {
+  
+  /**
+   * <p>Identifies a file written by a ChapterCache.</p>
+   */
+  private static final int MAGIC = 0x52504343;
+  
+  /**
+   * <p>The version of the layout of the files written by ChapterCache.</p>
+   */
+  private static final int FORMAT_VERSION = 1;
+  
+  private static final String EXTENSION = ".chapters.gz";
+  
+  private static final String HASH_ALGORITHM = "SHA-256";
+  
+  private static final int BUFFER_SIZE = 1 << 16;
+  
+  private final File book;
+  
+  /**
+   * <p>The file in which the chapters of {@link #book book} are saved.</p>
+   */
+  private final File file;
+  
+  /**
+   * <p>The hash of the current content of {@link #book book}.</p>
+   */
+  private final byte[] hash;
+  
+  /**
+   * <p>Constructs a ChapterCache for the HTML book {@code book}, hashing its current
+   * content.</p>
+   * @param book the source file of an HTML book
+   */
+  ChapterCache(File book){
+    this.book = book;
+    this.file = new File(Folder.HTML_CHAPTERS.getFolder(), book.getName() + EXTENSION);
+    this.hash = hash(book);
+  }
+  
+  /**
+   * <p>Returns the saved chapters of the book if they were saved from a book with the same
+   * content by the same version of the cleaning rules, or null otherwise, including if they
+   * cannot be read.</p>
+   * @return the saved chapters of the book, or null if there are no usable saved chapters
+   */
+  List<HtmlChapter> load(){
+    if(!file.exists()){
+      return null;
+    }
+    
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE)))){
+      
+      if(in.readInt() != MAGIC
+          || in.readInt() != FORMAT_VERSION
+          || in.readInt() != HtmlBook.CLEANING_VERSION){
+        return null;
+      }
+      byte[] savedHash = new byte[in.readInt()];
+      in.readFully(savedHash);
+      if(!Arrays.equals(hash, savedHash)){
+        return null;
+      }
+      
+      int count = in.readInt();
+      List<HtmlChapter> result = new ArrayList<>(count);
+      for(int i = 0; i < count; i++){
+        result.add(HtmlChapter.read(in));
+      }
+      return result;
+    } catch(IOException e){
+      return null;
+    }
+  }
+  
+  /**
+   * <p>Saves {@code chapters} as the chapters of the book, replacing any previously saved
+   * chapters. The file is written under a temporary name and then moved into place, so an
+   * interrupted save never leaves a partial file to be loaded. The saved chapters only spare
+   * later runs some work, so failing to save them is reported rather than thrown.</p>
+   * @param chapters the cleaned and split chapters of the book
+   * @return true if the chapters were saved, false if they could not be
+   */
+  boolean store(List<HtmlChapter> chapters){
+    File folder = file.getParentFile();
+    folder.mkdirs();
+    
+    try{
+      File temp = File.createTempFile(book.getName(), null, folder);
+      try{
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new GZIPOutputStream(new FileOutputStream(temp), BUFFER_SIZE)))){
+          
+          out.writeInt(MAGIC);
+          out.writeInt(FORMAT_VERSION);
+          out.writeInt(HtmlBook.CLEANING_VERSION);
+          out.writeInt(hash.length);
+          out.write(hash);
+          out.writeInt(chapters.size());
+          for(HtmlChapter chapter : chapters){
+            chapter.write(out);
+          }
+        }
+        java.nio.file.Files.move(
+            temp.toPath(),
+            file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+      } finally{
+        temp.delete();
+      }
+      return true;
+    } catch(IOException e){
+      //an unsaved cache only means that the book is cleaned and split again next time
+      return false;
+    }
+  }
+  
+  private static byte[] hash(File book){
+    try{
+      MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+      try(InputStream in = new DigestInputStream(new FileInputStream(book), digest)){
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while(in.read(buffer) >= 0){
+          //the digest sees every byte read
+        }
+      }
+      return digest.digest();
+    } catch(NoSuchAlgorithmException | IOException e){
+      throw new RuntimeException("Cannot hash " + book, e);
+    }
+  }
+}
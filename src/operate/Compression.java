@@ -0,0 +1,68 @@
+package operate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>The precompressed variants of a file that are saved next to it, for a static web host to
+ * send to clients that accept them instead of compressing the file for each request.</p>
+ */
+public enum Compression{
+  
+  /**
+   * <p>No compressed variant.</p>
+   */
+  NONE(null), 
+  
+  /**
+   * <p>A gzip-compressed variant, compressed at the highest level since it is compressed once
+   * and sent many times.</p>
+   */
+  GZIP(".gz");
+  
+  private static final int BUFFER_SIZE = 1 << 16;
+  
+  /**
+   * <p>The extension added to the name of a file to name its compressed variant.</p>
+   */
+  private final String extension;
+  
+  private Compression(String extension){
+    this.extension = extension;
+  }
+  
+  /**
+   * <p>Returns the compressed variant of {@code file}, or null if there is none.</p>
+   * @param file a file saved in uncompressed form
+   * @return the compressed variant of {@code file}, or null if this is {@link #NONE NONE}
+   */
+  File variant(File file){
+    return extension == null 
+        ? null 
+        : new File(file.getPath() + extension);
+  }
+  
+  /**
+   * <p>Returns a stream that compresses what is written to it and writes the result to
+   * {@code out}.</p>
+   * @param out the destination of the compressed data
+   * @return a stream that compresses what is written to it into {@code out}
+   * @throws IOException if the compressed stream cannot be started
+   * @throws UnsupportedOperationException if this is {@link #NONE NONE}
+   */
+  OutputStream compress(OutputStream out) throws IOException{
+    switch(this){
+    case GZIP:
+      return new GZIPOutputStream(out, BUFFER_SIZE){
+        {
+          def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+      };
+    default:
+      throw new UnsupportedOperationException(this + " does not compress");
+    }
+  }
+}
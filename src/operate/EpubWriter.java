@@ -0,0 +1,203 @@
+package operate;
+
+import common.Utf8Sink;
+import html.LinkedChapter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * <p>Packages linked chapters as a single EPUB archive. Every entry is streamed straight into the
+ * archive in one sequential pass: each chapter is rendered into its own entry and flushed before
+ * the next is rendered, so no loose files are staged and only one rendered chapter is buffered at
+ * a time. The chapters are {@link LinkedChapter#writeXhtml(Utf8Sink) written as XHTML}, as EPUB
+ * requires of its content documents. The package document and navigation document list the
+ * chapters in the order given, which is the order in which a reader pages through them.</p>
+ */
+class EpubWriter {
+  
+  private static final int BUFFER_SIZE = 1 << 16;
+  
+  private static final String MIMETYPE = "application/epub+zip";
+  
+  private static final String CONTENT_FOLDER = "OEBPS/";
+  
+  private static final String PACKAGE_NAME = "content.opf";
+  
+  private static final String NAV_NAME = "nav.xhtml";
+  
+  private static final String STYLESHEET_NAME = "style.css";
+  
+  private static final String CONTAINER_XML = 
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<container version=\"1.0\" xmlns=\"urn:oasis:names:tc:opendocument:xmlns:container\">\n"
+      + "  <rootfiles>\n"
+      + "    <rootfile full-path=\"" + CONTENT_FOLDER + PACKAGE_NAME + "\" "
+      + "media-type=\"application/oebps-package+xml\"/>\n"
+      + "  </rootfiles>\n"
+      + "</container>\n";
+  
+  private final String title;
+  
+  /**
+   * <p>The stylesheet linked by the chapters, or null if the archive has none.</p>
+   */
+  private final File stylesheet;
+  
+  /**
+   * <p>Constructs an EpubWriter for a book called {@code title}.</p>
+   * @param title the title of the book
+   * @param stylesheet the stylesheet linked by the chapters, or null if there is none to package
+   */
+  EpubWriter(String title, File stylesheet){
+    this.title = title;
+    this.stylesheet = stylesheet;
+  }
+  
+  /**
+   * <p>Writes {@code chapters} in the order given to a new EPUB archive at {@code epub},
+   * replacing any existing file.</p>
+   * @param chapters the chapters of the book in reading order
+   * @param epub the archive to be written
+   */
+  void write(List<LinkedChapter> chapters, File epub){
+    try(ZipOutputStream zip = new ZipOutputStream(
+        new BufferedOutputStream(new FileOutputStream(epub), BUFFER_SIZE))){
+      
+      //the sink is only ever flushed, since closing it would close the archive
+      Utf8Sink sink = new Utf8Sink(Channels.newChannel(zip));
+      
+      writeMimetype(zip);
+      
+      zip.putNextEntry(new ZipEntry("META-INF/container.xml"));
+      sink.write(CONTAINER_XML);
+      sink.flush();
+      zip.closeEntry();
+      
+      if(stylesheet != null){
+        zip.putNextEntry(new ZipEntry(CONTENT_FOLDER + STYLESHEET_NAME));
+        java.nio.file.Files.copy(stylesheet.toPath(), zip);
+        zip.closeEntry();
+      }
+      
+      for(LinkedChapter chapter : chapters){
+        zip.putNextEntry(new ZipEntry(CONTENT_FOLDER + chapter.getName()));
+        chapter.writeXhtml(sink);
+        sink.flush();
+        zip.closeEntry();
+      }
+      
+      zip.putNextEntry(new ZipEntry(CONTENT_FOLDER + PACKAGE_NAME));
+      sink.write(packageDocument(chapters));
+      sink.flush();
+      zip.closeEntry();
+      
+      zip.putNextEntry(new ZipEntry(CONTENT_FOLDER + NAV_NAME));
+      sink.write(navDocument(chapters));
+      sink.flush();
+      zip.closeEntry();
+    } catch(IOException e){
+      throw new RuntimeException("Cannot write " + epub, e);
+    }
+  }
+  
+  /**
+   * <p>Writes the {@code mimetype} entry, which an EPUB archive must have first and
+   * uncompressed, so it is stored with its size and checksum given up front.</p>
+   */
+  private static void writeMimetype(ZipOutputStream zip) throws IOException{
+    byte[] bytes = MIMETYPE.getBytes(StandardCharsets.US_ASCII);
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    
+    ZipEntry entry = new ZipEntry("mimetype");
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(bytes.length);
+    entry.setCompressedSize(bytes.length);
+    entry.setCrc(crc.getValue());
+    
+    zip.putNextEntry(entry);
+    zip.write(bytes);
+    zip.closeEntry();
+  }
+  
+  private String packageDocument(List<LinkedChapter> chapters){
+    StringBuilder manifest = new StringBuilder();
+    StringBuilder spine = new StringBuilder();
+    StringBuilder names = new StringBuilder();
+    for(int i = 0; i < chapters.size(); i++){
+      String name = chapters.get(i).getName();
+      manifest.append("    <item id=\"c").append(i)
+          .append("\" href=\"").append(escape(name))
+          .append("\" media-type=\"application/xhtml+xml\"/>\n");
+      spine.append("    <itemref idref=\"c").append(i).append("\"/>\n");
+      names.append(name).append('\n');
+    }
+    if(stylesheet != null){
+      manifest.append("    <item id=\"css\" href=\"").append(STYLESHEET_NAME)
+          .append("\" media-type=\"text/css\"/>\n");
+    }
+    
+    //the same chapters in the same order always get the same identifier
+    UUID id = UUID.nameUUIDFromBytes(names.toString().getBytes(StandardCharsets.UTF_8));
+    
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<package xmlns=\"http://www.idpf.org/2007/opf\" version=\"3.0\" "
+        + "unique-identifier=\"book-id\">\n"
+        + "  <metadata xmlns:dc=\"http://purl.org/dc/elements/1.1/\">\n"
+        + "    <dc:identifier id=\"book-id\">urn:uuid:" + id + "</dc:identifier>\n"
+        + "    <dc:title>" + escape(title) + "</dc:title>\n"
+        + "    <dc:language>en</dc:language>\n"
+        + "    <meta property=\"dcterms:modified\">" 
+        + Instant.now().truncatedTo(ChronoUnit.SECONDS) + "</meta>\n"
+        + "  </metadata>\n"
+        + "  <manifest>\n"
+        + "    <item id=\"nav\" href=\"" + NAV_NAME + "\" "
+        + "media-type=\"application/xhtml+xml\" properties=\"nav\"/>\n"
+        + manifest
+        + "  </manifest>\n"
+        + "  <spine>\n"
+        + spine
+        + "  </spine>\n"
+        + "</package>\n";
+  }
+  
+  private String navDocument(List<LinkedChapter> chapters){
+    StringBuilder items = new StringBuilder();
+    for(LinkedChapter chapter : chapters){
+      items.append("      <li><a href=\"").append(escape(chapter.getName())).append("\">")
+          .append(escape(chapter.getTitle())).append("</a></li>\n");
+    }
+    
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<html xmlns=\"http://www.w3.org/1999/xhtml\" "
+        + "xmlns:epub=\"http://www.idpf.org/2007/ops\">\n"
+        + "<head><title>" + escape(title) + "</title></head>\n"
+        + "<body>\n"
+        + "  <nav epub:type=\"toc\">\n"
+        + "    <ol>\n"
+        + items
+        + "    </ol>\n"
+        + "  </nav>\n"
+        + "</body>\n"
+        + "</html>\n";
+  }
+  
+  private static String escape(String s){
+    return s
+        .replace("&", "&amp;")
+        .replace("<", "&lt;")
+        .replace(">", "&gt;")
+        .replace("\"", "&quot;");
+  }
+}
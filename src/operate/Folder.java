@@ -1,12 +1,15 @@
 package operate;
 
 import common.Files;
-import html.HtmlChapter;
-import html.HtmlEntity;
+import html.LinkScript;
+import html.LinkedChapter;
+import html.Markup;
+import html.PhraseTable;
+import html.TrailSlots;
 import java.io.File;
-import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.util.function.Function;
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * <p>Represents the folders that play significant roles in this project: Five folders for entire 
@@ -16,21 +19,18 @@ import java.util.function.Function;
  */
 public enum Folder {
   
-  HTML_BOOKS   (null),
-  HTML_CHAPTERS(Object::toString),
-  CORPUS       (HtmlEntity::txtString),
-  READABLE     (Object::toString);
+  HTML_BOOKS, 
+  HTML_CHAPTERS, 
+  CORPUS, 
+  READABLE;
   
 	/**
 	 * <p>The actual directory</p>
 	 */
 	private final File folder;
 	
-	private final Function<HtmlEntity, String> func;
-	
-	private Folder(Function<HtmlEntity, String> func){
+	private Folder(){
 	  this.folder = new File(getFolderName());
-		this.func = func;
 	}
 	
 	/**
@@ -53,16 +53,106 @@ public enum Folder {
             .toString();
 	}
 	
-	public void save(HtmlChapter h){
-    try(OutputStreamWriter out = 
-        Files.newOutputStreamWriter(folder + File.separator + h.getName())){
-      for(HtmlEntity e : h){
-        out.write(func.apply(e));
-      }
-      out.close();
-    } catch(IOException e){
-      //TODO implement the content of this block
-      throw new RuntimeException("Cannot save the HTMLFile to the Folder");
-    }
+	/**
+	 * <p>Writes each of {@code chapters} to the file of the same name in this directory, in
+	 * parallel, skipping every chapter whose content is the same as that of the file already
+	 * there according to the directory's {@link FolderManifest manifest}. Changed files are
+	 * replaced atomically, and saved with a compressed variant of the kind
+	 * {@code compression}.</p>
+	 * @param chapters the linked chapters to write
+	 * @param compression the compressed variant to save with each file
+	 * @return the number of files written
+	 */
+	public int saveChanged(Collection<LinkedChapter> chapters, Compression compression){
+	  return saveChanged(chapters, compression, Markup.FULL, null);
+	}
+	
+	/**
+	 * <p>{@link #saveChanged(Collection,Compression) Saves} each of {@code chapters} whose content
+	 * has changed, written in the form {@code markup}. If {@code markup}
+	 * {@link Markup#sharesTitles() shares titles}, the {@link PhraseTable#SCRIPT_NAME script} of
+	 * {@code phrases} is saved with them, and if it does not put the links
+	 * {@link Markup#linksInline() inline}, the {@link LinkScript#dataName(String) link data} of
+	 * each chapter and the {@link LinkScript#SCRIPT_NAME script} that adds the links are saved
+	 * too. Files that an earlier save wrote to this directory and this one does not, such as the
+	 * scripts of another form of markup, are deleted.</p>
+	 * @param chapters the linked chapters to write
+	 * @param compression the compressed variant to save with each file
+	 * @param markup the form in which the chapters are written
+	 * @param phrases the numbers of the linked phrases, needed if {@code markup} shares titles
+	 * @return the number of files written
+	 */
+	public int saveChanged(
+	    Collection<LinkedChapter> chapters, 
+	    Compression compression, 
+	    Markup markup, 
+	    PhraseTable phrases){
+	  
+	  folder.mkdirs();
+	  FolderManifest manifest = new FolderManifest(folder, compression, markup);
+	  long written = chapters.parallelStream()
+	      .filter((h) -> manifest.save(
+	          h.getName(), 
+	          (out) -> h.writeLocatingTrail(out, markup, phrases)))
+	      .count();
+	  if(markup.sharesTitles() && manifest.save(PhraseTable.SCRIPT_NAME, (out) -> {
+	    phrases.writeScript(out);
+	    return TrailSlots.NONE;
+	  })){
+	    written++;
+	  }
+	  if(!markup.linksInline()){
+	    written += chapters.parallelStream()
+	        .filter((h) -> manifest.save(LinkScript.dataName(h.getName()), (out) -> {
+	          h.writeLinkData(out, phrases);
+	          return TrailSlots.NONE;
+	        }))
+	        .count();
+	    if(manifest.save(LinkScript.SCRIPT_NAME, (out) -> {
+	      LinkScript.writeScript(out);
+	      return TrailSlots.NONE;
+	    })){
+	      written++;
+	    }
+	  }
+	  manifest.prune();
+	  manifest.store();
+	  return (int) written;
+	}
+	
+	/**
+	 * <p>Points the links to the previous and next chapters in the file of each chapter on
+	 * {@code trail} in this directory at that chapter's neighbors on {@code trail}, splicing new
+	 * values into the bytes of those links in files that were
+	 * {@link #saveChanged(Collection,Compression,Markup,PhraseTable) saved} in the form
+	 * {@code markup} with their {@link TrailSlots trail slots} recorded in the directory's
+	 * {@link FolderManifest manifest}. Nothing is patched unless every file in the directory was
+	 * saved that way and the files with trail slots are exactly the chapters on {@code trail},
+	 * since otherwise saving the chapters in full would also write or delete files. Compressed
+	 * variants of the kind {@code compression} are saved again for every changed file.</p>
+	 * @param trail the new trail
+	 * @param compression the compressed variant to save with each file
+	 * @param markup the form in which the chapters are written
+	 * @return true if the file of every chapter on {@code trail} was patched, false if the
+	 * chapters must be saved in full
+	 */
+	public boolean patchTrail(Trail trail, Compression compression, Markup markup){
+	  FolderManifest manifest = new FolderManifest(folder, compression, markup);
+	  Set<String> chapters = trail.trailElements()
+	      .map((te) -> te.chapter().getName())
+	      .collect(Collectors.toSet());
+	  if(!manifest.canPatchTrail(chapters)){
+	    return false;
+	  }
+	  
+	  boolean patched = trail.trailElements()
+	      .parallel()
+	      .map((te) -> manifest.patchTrail(
+	          te.chapter().getName(), 
+	          te.prev().chapter().getName(), 
+	          te.next().chapter().getName()))
+	      .reduce(true, Boolean::logicalAnd);
+	  manifest.store();
+	  return patched;
 	}
 }
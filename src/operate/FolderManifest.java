@@ -0,0 +1,510 @@
+package operate;
+
+import common.Utf8Sink;
+import html.Markup;
+import html.TrailSlots;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A record of a hash of the content of every file written to a folder, saved in the folder, so
+ * that a file whose newly rendered content is the same as what is already on disk is not written
+ * again. Files that do change are written under a temporary name and then atomically renamed into
+ * place, so nothing reading the folder ever sees a partly written file.</p> <p>If a
+ * {@link Compression compressed variant} is asked for, it is compressed from the same rendered
+ * bytes while the file itself is being written, and saved next to the file along with a sidecar
+ * holding the hash of the file's content, which a web server can use as the entity tag of both
+ * the file and its variant. Variants and sidecars left beside a file by a run that saved a
+ * different kind of variant, or none, are deleted whenever the file is saved, so that a web
+ * server never sends one of them in place of the current file.</p> <p>The manifest also records
+ * where in each file the {@link TrailSlots addresses and titles} of the links to the previous and
+ * next chapters are, so that a file can be {@link #patchTrail(String,String,String) pointed at a
+ * new trail} by splicing new values into its bytes instead of rendering it again. The patched
+ * file is replaced atomically like any other. Since only those links are changed, a folder is
+ * only patched if every file in it was saved in the {@link Markup form of markup} being saved
+ * now and the files with trail slots are exactly the chapters of the new trail; otherwise the
+ * trail also changes which files belong in the folder or how they are written.</p> <p>A
+ * FolderManifest may be used to save files from several threads at once. Each thread renders
+ * into a buffer of its own, reused for every file it saves.</p>
+ */
+class FolderManifest {
+  
+  /**
+   * <p>The name of the file in the folder that holds the manifest.</p>
+   */
+  private static final String MANIFEST_NAME = ".manifest";
+  
+  private static final String HASH_ALGORITHM = "SHA-256";
+  
+  /**
+   * <p>Separates the file name, the hash, the formatted trail slots, and the form of markup in a
+   * line of the manifest.</p>
+   */
+  private static final String DELIM = "\t";
+  
+  /**
+   * <p>The extension added to the name of a file to name the sidecar holding its hash.</p>
+   */
+  private static final String HASH_EXTENSION = ".sha256";
+  
+  private static final ThreadLocal<RenderBuffer> BUFFERS = 
+      ThreadLocal.withInitial(RenderBuffer::new);
+  
+  /**
+   * <p>Writes the content of a file to a Utf8Sink and returns where the file's trail slots
+   * are.</p>
+   */
+  @FunctionalInterface
+  interface Rendering{
+    TrailSlots write(Utf8Sink out) throws IOException;
+  }
+  
+  private final File folder;
+  
+  private final Compression compression;
+  
+  private final Markup markup;
+  
+  /**
+   * <p>The hash, trail slots, and form of markup of the content of each file in the folder, by
+   * file name.</p>
+   */
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  
+  /**
+   * <p>The names of the files {@link #save(String,Rendering) saved} through this FolderManifest,
+   * whether or not they had changed.</p>
+   */
+  private final Set<String> saved = ConcurrentHashMap.newKeySet();
+  
+  /**
+   * <p>Constructs a FolderManifest for {@code folder}, loading the manifest saved there, if
+   * any.</p>
+   * @param folder the folder to which files are saved
+   * @param compression the compressed variant saved with each file
+   * @param markup the form of markup in which the files are saved
+   */
+  FolderManifest(File folder, Compression compression, Markup markup){
+    this.folder = folder;
+    this.compression = compression;
+    this.markup = markup;
+    
+    File manifest = new File(folder, MANIFEST_NAME);
+    if(manifest.exists()){
+      try(BufferedReader in = new BufferedReader(new InputStreamReader(
+          new FileInputStream(manifest), StandardCharsets.UTF_8))){
+        for(String line; (line = in.readLine()) != null;){
+          String[] fields = line.split(DELIM, -1);
+          if(fields.length >= 2){
+            entries.put(fields[0], new Entry(fields[1], parseSlots(fields), parseMarkup(fields)));
+          }
+        }
+      } catch(IOException e){
+        //an unreadable manifest only means that every file is written
+        entries.clear();
+      }
+    }
+  }
+  
+  /**
+   * <p>Renders the file named {@code name} and writes it to the folder unless the folder already
+   * has a file of that name with exactly that content according to the manifest.</p>
+   * @param name the name of the file
+   * @param rendering writes the content of the file
+   * @return true if the file was written, false if it was unchanged
+   */
+  boolean save(String name, Rendering rendering){
+    saved.add(name);
+    try{
+      RenderBuffer buffer = BUFFERS.get();
+      buffer.reset();
+      TrailSlots slots;
+      try(Utf8Sink out = new Utf8Sink(buffer)){
+        slots = rendering.write(out);
+      }
+      return commit(name, buffer, slots);
+    } catch(IOException e){
+      throw new RuntimeException("Cannot save " + name + " to " + folder, e);
+    }
+  }
+  
+  /**
+   * <p>Deletes every file in the manifest that has not been {@link #save(String,Rendering) saved}
+   * through this FolderManifest, along with its compressed variants and sidecar, and removes it
+   * from the manifest. Meant to be called once everything that belongs in the folder has been
+   * saved, so that files an earlier run wrote and this one does not, such as the scripts of a
+   * form of markup no longer in use, are not left behind.</p>
+   * @return the number of files deleted
+   */
+  int prune(){
+    int count = 0;
+    for(String name : entries.keySet()){
+      if(saved.contains(name)){
+        continue;
+      }
+      File file = new File(folder, name);
+      try{
+        for(Compression c : Compression.values()){
+          File variant = c.variant(file);
+          if(variant != null){
+            java.nio.file.Files.deleteIfExists(variant.toPath());
+          }
+        }
+        java.nio.file.Files.deleteIfExists(new File(folder, name + HASH_EXTENSION).toPath());
+        java.nio.file.Files.deleteIfExists(file.toPath());
+      } catch(IOException e){
+        throw new RuntimeException("Cannot delete " + name + " from " + folder, e);
+      }
+      entries.remove(name);
+      count++;
+    }
+    return count;
+  }
+  
+  /**
+   * <p>Returns true if every file in the manifest was saved in the form of markup this
+   * FolderManifest saves and the files whose trail slots the manifest knows are exactly those
+   * named in {@code chapters}, so that {@link #patchTrail(String,String,String) patching} the
+   * trail of each of them leaves the folder as saving the chapters in full would.</p>
+   * @param chapters the names of the files of the chapters on a trail
+   * @return true if the trail of the folder can be patched, false otherwise
+   */
+  boolean canPatchTrail(Set<String> chapters){
+    int trailed = 0;
+    for(Map.Entry<String, Entry> e : entries.entrySet()){
+      if(e.getValue().markup != markup){
+        return false;
+      }
+      if(e.getValue().slots.count() > 0){
+        if(!chapters.contains(e.getKey())){
+          return false;
+        }
+        trailed++;
+      }
+    }
+    return trailed == chapters.size();
+  }
+  
+  /**
+   * <p>Points the links to the previous and next chapters in the file named {@code name} at
+   * {@code prev} and {@code next} by splicing new values into the bytes of their
+   * {@link TrailSlots trail slots} in the file as it is, and replacing the file atomically with
+   * the result.</p>
+   * @param name the name of the file
+   * @param prev the name of the file of the previous chapter
+   * @param next the name of the file of the next chapter
+   * @return true if the file now links to {@code prev} and {@code next}, false if it cannot be
+   * patched because the manifest does not know where its trail slots are, because it was saved in
+   * another form of markup, or because the file is missing or has changed since the manifest was
+   * saved
+   */
+  boolean patchTrail(String name, String prev, String next){
+    Entry entry = entries.get(name);
+    File file = new File(folder, name);
+    if(entry == null || entry.slots.count() == 0 || entry.markup != markup || !file.exists()){
+      return false;
+    }
+    
+    try{
+      byte[] old = java.nio.file.Files.readAllBytes(file.toPath());
+      if(!entry.hash.equals(hash(old, old.length))){
+        return false;
+      }
+      
+      RenderBuffer buffer = BUFFERS.get();
+      buffer.reset();
+      TrailSlots slots;
+      try(Utf8Sink out = new Utf8Sink(buffer)){
+        slots = entry.slots.patch(old, prev, next, out);
+      } catch(IllegalArgumentException e){
+        return false;
+      }
+      commit(name, buffer, slots);
+      return true;
+    } catch(IOException e){
+      throw new RuntimeException("Cannot patch the trail of " + name + " in " + folder, e);
+    }
+  }
+  
+  /**
+   * <p>Writes the content of {@code buffer} as the file named {@code name} unless the folder
+   * already has a file of that name with exactly that content according to the manifest, and
+   * records its hash, {@code slots}, and form of markup in the manifest.</p>
+   * @return true if the file was written, false if it was unchanged
+   */
+  private boolean commit(String name, RenderBuffer buffer, TrailSlots slots) throws IOException{
+    File file = new File(folder, name);
+    File variant = compression.variant(file);
+    File sidecar = new File(folder, name + HASH_EXTENSION);
+    
+    removeStaleVariants(file, sidecar);
+    
+    String hash = buffer.hash();
+    Entry entry = entries.get(name);
+    if(entry != null 
+        && hash.equals(entry.hash) 
+        && file.exists() 
+        && (variant == null || (variant.exists() && sidecar.exists()))){
+      entries.put(name, new Entry(hash, slots, markup));
+      return false;
+    }
+    
+    CompletableFuture<Void> compressed = variant == null 
+        ? CompletableFuture.completedFuture(null) 
+        : CompletableFuture.runAsync(() -> saveVariant(buffer, variant, hash, sidecar));
+    try{
+      atomicWrite(file, buffer::writeTo);
+    } finally{
+      awaitVariant(compressed);
+    }
+    
+    entries.put(name, new Entry(hash, slots, markup));
+    return true;
+  }
+  
+  /**
+   * <p>Deletes every compressed variant of {@code file} other than the kind this manifest saves,
+   * and {@code sidecar} too if this manifest saves no variant.</p>
+   */
+  private void removeStaleVariants(File file, File sidecar) throws IOException{
+    for(Compression other : Compression.values()){
+      File stale = other.variant(file);
+      if(other != compression && stale != null){
+        java.nio.file.Files.deleteIfExists(stale.toPath());
+      }
+    }
+    if(compression.variant(file) == null){
+      java.nio.file.Files.deleteIfExists(sidecar.toPath());
+    }
+  }
+  
+  /**
+   * <p>Saves the content of {@code buffer}, compressed, as {@code variant}, and {@code hash} as
+   * {@code sidecar}. The buffer is only read, so this may run while the buffer is also being
+   * written to the uncompressed file.</p>
+   */
+  private void saveVariant(RenderBuffer buffer, File variant, String hash, File sidecar){
+    try{
+      atomicWrite(variant, (out) -> {
+        try(OutputStream compressed = compression.compress(out)){
+          buffer.writeTo(compressed);
+        }
+      });
+      atomicWrite(sidecar, (out) -> out.write(hash.getBytes(StandardCharsets.US_ASCII)));
+    } catch(IOException e){
+      throw new UncheckedIOException(e);
+    }
+  }
+  
+  private static void awaitVariant(CompletableFuture<Void> compressed) throws IOException{
+    try{
+      compressed.join();
+    } catch(CompletionException e){
+      if(e.getCause() instanceof UncheckedIOException){
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      throw e;
+    }
+  }
+  
+  /**
+   * <p>Writes the content of a file to an OutputStream.</p>
+   */
+  @FunctionalInterface
+  private interface Content{
+    void write(OutputStream out) throws IOException;
+  }
+  
+  /**
+   * <p>Writes {@code content} to a temporary file in the folder and then moves it over
+   * {@code file}.</p>
+   */
+  private void atomicWrite(File file, Content content) throws IOException{
+    File temp = File.createTempFile(file.getName(), null, folder);
+    try{
+      try(OutputStream out = new FileOutputStream(temp)){
+        content.write(out);
+      }
+      replace(temp, file);
+    } finally{
+      temp.delete();
+    }
+  }
+  
+  /**
+   * <p>Saves the manifest in the folder, replacing the manifest that was there.</p>
+   */
+  void store(){
+    try{
+      atomicWrite(new File(folder, MANIFEST_NAME), (out) -> {
+        BufferedWriter text = new BufferedWriter(new OutputStreamWriter(
+            out, StandardCharsets.UTF_8));
+        for(Map.Entry<String, Entry> e : entries.entrySet()){
+          Entry entry = e.getValue();
+          text.write(e.getKey() 
+              + DELIM + entry.hash 
+              + DELIM + entry.slots.format() 
+              + DELIM + Objects.toString(entry.markup, ""));
+          text.newLine();
+        }
+        text.flush();
+      });
+    } catch(IOException e){
+      throw new RuntimeException("Cannot save the manifest of " + folder, e);
+    }
+  }
+  
+  /**
+   * <p>Moves {@code temp} to {@code file}, replacing {@code file}, atomically if the file system
+   * allows it.</p>
+   */
+  private static void replace(File temp, File file) throws IOException{
+    try{
+      java.nio.file.Files.move(
+          temp.toPath(), 
+          file.toPath(), 
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch(AtomicMoveNotSupportedException e){
+      java.nio.file.Files.move(
+          temp.toPath(), 
+          file.toPath(), 
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+  
+  /**
+   * <p>Returns the hex-encoded hash of the first {@code size} bytes of {@code bytes}.</p>
+   */
+  private static String hash(byte[] bytes, int size){
+    try{
+      MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+      digest.update(bytes, 0, size);
+      StringBuilder result = new StringBuilder();
+      for(byte b : digest.digest()){
+        result.append(Character.forDigit((b >>> 4) & 0xF, 16));
+        result.append(Character.forDigit(b & 0xF, 16));
+      }
+      return result.toString();
+    } catch(NoSuchAlgorithmException e){
+      throw new RuntimeException("Cannot hash with " + HASH_ALGORITHM, e);
+    }
+  }
+  
+  /**
+   * <p>Returns the trail slots in the {@code fields} of a line of the manifest, or
+   * {@link TrailSlots#NONE NONE} if the line has none or they cannot be read.</p>
+   */
+  private static TrailSlots parseSlots(String[] fields){
+    if(fields.length < 3){
+      return TrailSlots.NONE;
+    }
+    try{
+      return TrailSlots.parse(fields[2]);
+    } catch(IllegalArgumentException e){
+      return TrailSlots.NONE;
+    }
+  }
+  
+  /**
+   * <p>Returns the form of markup in the {@code fields} of a line of the manifest, or null if the
+   * line has none or it cannot be read.</p>
+   */
+  private static Markup parseMarkup(String[] fields){
+    if(fields.length < 4){
+      return null;
+    }
+    try{
+      return Markup.valueOf(fields[3]);
+    } catch(IllegalArgumentException e){
+      return null;
+    }
+  }
+  
+  /**
+   * <p>The hex-encoded hash of the content of a file, the places of its trail slots, and the form
+   * of markup in which it was saved, or null if that is not known.</p>
+   */
+  private static final class Entry{
+    
+    private final String hash;
+    
+    private final TrailSlots slots;
+    
+    private final Markup markup;
+    
+    private Entry(String hash, TrailSlots slots, Markup markup){
+      this.hash = hash;
+      this.slots = slots;
+      this.markup = markup;
+    }
+  }
+  
+  /**
+   * <p>A growable in-memory channel holding the rendered content of one file at a time.</p>
+   */
+  private static final class RenderBuffer implements WritableByteChannel{
+    
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    
+    private int size = 0;
+    
+    private void reset(){
+      size = 0;
+    }
+    
+    @Override
+    public int write(ByteBuffer src){
+      int length = src.remaining();
+      if(size + length > bytes.length){
+        bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + length));
+      }
+      src.get(bytes, size, length);
+      size += length;
+      return length;
+    }
+    
+    @Override
+    public boolean isOpen(){
+      return true;
+    }
+    
+    /**
+     * <p>Does nothing: the content stays in this buffer to be hashed and written.</p>
+     */
+    @Override
+    public void close(){
+    }
+    
+    private String hash(){
+      return FolderManifest.hash(bytes, size);
+    }
+    
+    private void writeTo(OutputStream out) throws IOException{
+      out.write(bytes, 0, size);
+    }
+  }
+}
@@ -5,20 +5,29 @@ import common.Files;
 import html.AnchorInfo;
 import html.HtmlBook;
 import html.HtmlChapter;
+import html.LinkedChapter;
+import html.Markup;
+import html.PhraseTable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import text.Chapter;
+import text.Corpus;
 import text.Location;
 import text.Phrase;
 import text.Quote;
@@ -30,7 +39,17 @@ public class RepeatedPhrasesApp {
   private final Manager<Collection<HtmlChapter>> htmlChaptersManager;
   private final Manager<Collection<Chapter>>     chaptersManager;
   private final Manager<Collection<AnchorInfo>>  anchorsManager;
-  private final Manager<Collection<HtmlChapter>> linkedChaptersManager;
+  private final Manager<Collection<LinkedChapter>> linkedChaptersManager;
+  
+  /**
+   * <p>The compressed variant saved next to each file in {@link Folder#READABLE READABLE}.</p>
+   */
+  private Compression readableCompression = Compression.NONE;
+  
+  /**
+   * <p>The form in which the linked chapters are written to {@link Folder#READABLE READABLE}.</p>
+   */
+  private Markup readableMarkup = Markup.FULL;
   
   public RepeatedPhrasesApp(Consumer<String> msg){
     this.msg = msg;
@@ -55,6 +74,25 @@ public class RepeatedPhrasesApp {
     return this.msg;
   }
   
+  /**
+   * <p>Sets the compressed variant to be saved next to each linked chapter, for serving the
+   * {@link Folder#READABLE READABLE} folder from a static web host.</p>
+   * @param compression the compressed variant to save with each linked chapter
+   */
+  public void setReadableCompression(Compression compression){
+    this.readableCompression = compression;
+  }
+  
+  /**
+   * <p>Sets the form in which the linked chapters are written to {@link Folder#READABLE
+   * READABLE}, such as {@link Markup#MINIFIED minified} for smaller files or
+   * {@link Markup#CLIENT_LINKED client-linked} for pages that are quicker to lay out.</p>
+   * @param markup the form in which the linked chapters are written
+   */
+  public void setReadableMarkup(Markup markup){
+    this.readableMarkup = markup;
+  }
+  
   public Collection<HtmlChapter> getHtmlChapters(){
     return htmlChaptersManager.get(null, null);
   }
@@ -67,7 +105,7 @@ public class RepeatedPhrasesApp {
     return anchorsManager.get(null, trail);
   }
   
-  public Collection<HtmlChapter> getLinkedChapters(Integer minSize, Trail trail){
+  public Collection<LinkedChapter> getLinkedChapters(Integer minSize, Trail trail){
     return linkedChaptersManager.get(minSize, trail);
   }
   
@@ -86,7 +124,7 @@ public class RepeatedPhrasesApp {
       }
     }
   }
-
+  
   /**
    * <p>Does everything: Reads HTML novels from the hard drive, extracts Chapters from them, 
    * generates anchors, links repeated phrases in html chapters, and links html chapters 
@@ -100,14 +138,39 @@ public class RepeatedPhrasesApp {
    */
   public void isolateChaptersAndLink(Trail trail, int limit, Consumer<String> msg) {
     ensureFolders(msg);
+    saveCorpus();
     setTrail(limit, trail);
   }
   
+  /**
+   * <p>Writes the words of every chapter to a memory-mappable {@link Corpus corpus file} in
+   * {@link Folder#CORPUS CORPUS}, for later runs and analysis tools to
+   * {@link Corpus#open(File) open} without reading the books.</p>
+   */
+  public void saveCorpus(){
+    Corpus.write(getChapters(), new File(Folder.CORPUS.getFolder(), CORPUS_FILE));
+  }
+  
   public void linksAndTrail(int limit, Trail trail){
     setTrail(limit, trail);
   }
   
+  /**
+   * <p>Points the links to the previous and next chapters in every file in
+   * {@link Folder#READABLE READABLE} at the chapters' neighbors on {@code trail}. If every file
+   * was saved in the selected form of markup with the places of those links recorded, and the
+   * saved chapters are those on {@code trail}, new links are
+   * {@link Folder#patchTrail(Trail,Compression,Markup) spliced} into the saved files, and the
+   * chapters are not linked again. Otherwise, the chapters are linked and saved in full.</p>
+   * @param trail the new trail
+   * @param msg receives progress messages
+   */
   public void setTrail(Trail trail, Consumer<String> msg) {
+    if(Folder.READABLE.patchTrail(trail, readableCompression, readableMarkup)){
+      msg.accept("Patched the trail links in " + Folder.READABLE.getFolderName());
+      return;
+    }
+    
     //XXX maybe use limit = null, if the linkedChaptersManager's cache rule allows for "null = 'whatever, dude'"
     int limit = 1 + Files.MAX_PHRASE_SIZE; //XXX placeholder
     setTrail(limit, trail);
@@ -116,14 +179,9 @@ public class RepeatedPhrasesApp {
   //htmlChapters generation methods
   
   private Collection<HtmlChapter> generateHtmlChapters(){
-    return Stream.<File>of(Folder.HTML_BOOKS.getFolder().listFiles(BookData::isBook))
-        .map(RepeatedPhrasesApp::newHTMLFile) 
-        .map(HtmlBook::cleanAndSplit)
-        .reduce((c1, c2) -> {
-          c1.addAll(c2);
-          return c1;
-        })
-        .get();
+    return getChapters().stream()
+        .map(Chapter::getSource)
+        .collect(Collectors.toList());
   }
   
   private static HtmlBook newHTMLFile(File f){
@@ -136,16 +194,114 @@ public class RepeatedPhrasesApp {
   
   //chaptersManager generation methods
   
+  /**
+   * <p>A rough estimate of the peak number of bytes of heap needed to parse, clean, and split an
+   * HTML book, per byte of the book's source file, used to keep concurrent ingestion from
+   * exhausting the heap.</p>
+   */
+  private static final long HEAP_BYTES_PER_SOURCE_BYTE = 64;
+  
+  /**
+   * <p>Reads the HTML books in {@link Folder#HTML_BOOKS HTML_BOOKS}, cleans them, splits them
+   * into chapters, and makes a Chapter of each. The books are independent of one another, so they
+   * are ingested concurrently, largest first, on a pool of threads bounded by the number of
+   * processors and by how many of the largest book fit in the heap at once. Each worker turns
+   * every HtmlChapter into a Chapter as soon as it is cut from its book. The chapters are
+   * collected in the order of {@link BookData BookData} regardless of which book finishes
+   * first.</p>
+   * @return the chapters of all the HTML books, in {@code BookData} order
+   */
   private Collection<Chapter> generateChapters(){
-    return getHtmlChapters().stream()
-        .map(Chapter::new)
+    List<File> books = Stream.of(BookData.values())
+        .map((bd) -> new File(Folder.HTML_BOOKS.getFolder(), bd.getFilename()))
+        .filter(File::exists)
         .collect(Collectors.toList());
+    if(books.isEmpty()){
+      return new ArrayList<>(0);
+    }
+    
+    ExecutorService pool = Executors.newFixedThreadPool(ingestionThreads(books));
+    try{
+      Map<File, Future<List<Chapter>>> futures = new HashMap<>();
+      books.stream()
+          .sorted(Comparator.comparingLong(File::length).reversed())
+          .forEach((f) -> futures.put(f, pool.submit(() -> ingest(f))));
+      
+      List<Chapter> result = new ArrayList<>();
+      for(File f : books){
+        result.addAll(awaitChapters(f, futures.get(f)));
+      }
+      return result;
+    } finally{
+      pool.shutdownNow();
+    }
+  }
+  
+  /**
+   * <p>Returns the Chapters of the HTML book {@code f}, loaded from its
+   * {@link ChapterCache saved chapters} if they are current, or else cleaned and split from the
+   * book and then saved. Failing to save them is reported to {@link #msg msg} and is otherwise
+   * ignored.</p>
+   */
+  private List<Chapter> ingest(File f){
+    ChapterCache cache = new ChapterCache(f);
+    List<HtmlChapter> saved = cache.load();
+    if(saved != null){
+      return saved.stream()
+          .map(Chapter::new)
+          .collect(Collectors.toList());
+    }
+    
+    List<HtmlChapter> htmlChapters = new ArrayList<>();
+    List<Chapter> result = new ArrayList<>();
+    newHTMLFile(f).cleanAndSplit((h) -> {
+      htmlChapters.add(h);
+      result.add(new Chapter(h));
+    });
+    if(!cache.store(htmlChapters)){
+      msg.accept("Cannot save the cleaned chapters of " + f.getName());
+    }
+    return result;
+  }
+  
+  /**
+   * <p>Returns the number of threads with which to ingest {@code books}: no more than the number
+   * of available processors or the number of books, and no more than the number of copies of the
+   * largest book that the currently available heap can hold, but at least one.</p>
+   */
+  private static int ingestionThreads(List<File> books){
+    Runtime runtime = Runtime.getRuntime();
+    long availableHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    long largestBook = books.stream()
+        .mapToLong(File::length)
+        .max()
+        .getAsLong();
+    long byMemory = availableHeap / Math.max(1, largestBook * HEAP_BYTES_PER_SOURCE_BYTE);
+    
+    return (int) Math.max(1, Math.min(
+        Math.min(runtime.availableProcessors(), books.size()), 
+        byMemory));
+  }
+  
+  private static List<Chapter> awaitChapters(File f, Future<List<Chapter>> future){
+    try{
+      return future.get();
+    } catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while ingesting " + f, e);
+    } catch(ExecutionException e){
+      Throwable cause = e.getCause();
+      if(cause instanceof RuntimeException){
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException("Could not ingest " + f, cause);
+    }
   }
   
   //anchorsManager generation methods
-
+  
   private final Map<String, Phrase> phraseTracker = Collections.synchronizedMap(new HashMap<>());
-
+  
   /**
    * <p>The default value of the minimum number of words a phrase needs to have for its related 
    * anchors to be added to output files. Used when such a value is not specified as a command-
@@ -268,27 +424,65 @@ public class RepeatedPhrasesApp {
   
   //linkedChaptersManager generation methods
   
-  private Collection<HtmlChapter> generateLinkedChapters(int minSize, Trail trail){
+  private Collection<LinkedChapter> generateLinkedChapters(int minSize, Trail trail){
     Map<Chapter, List<AnchorInfo>> toAnchors = getAnchors(trail).stream()
         .collect(Collectors.groupingBy((ai) -> ai.position().getChapter()));
     
     //add phrase-anchors
-    List<HtmlChapter> linked = toAnchors.keySet().stream()
-        .map((c) -> c.getSource().clone().link(toAnchors.get(c)))
-        .collect(Collectors.toList());
+    Map<Chapter, LinkedChapter> linked = new HashMap<>();
+    toAnchors.forEach((c, anchors) -> linked.put(c, c.getSource().linked(anchors)));
     
     //add links to chapter headers and footers
     trail.trailElements().forEach(
-        (te) -> te.chapter().getSource().setTrail(
-            te.prev().chapter().getName(), 
-            te.next().chapter().getName()));
+        (te) -> linked
+            .computeIfAbsent(
+                te.chapter(), 
+                (c) -> c.getSource().linked(Collections.emptyList()))
+            .setTrail(
+                te.prev().chapter().getName(), 
+                te.next().chapter().getName()));
     
-    return linked;
+    return linked.values();
   }
   
   //methods for saving finished linked chapters
   
   private void setTrail(Integer limit, Trail trail){
-    getLinkedChapters(limit, trail).parallelStream().forEach(Folder.READABLE::save);
+    Folder.READABLE.saveChanged(
+        getLinkedChapters(limit, trail), 
+        readableCompression, 
+        readableMarkup, 
+        readableMarkup.sharesTitles() ? PhraseTable.of(getAnchors(trail)) : null);
   }
+  
+  /**
+   * <p>Writes the linked chapters to a single EPUB archive at {@code epub}, in the order in which
+   * {@code trail} visits them, along with the {@link Folder#READABLE READABLE} folder's
+   * {@value #STYLESHEET} if it has one. Linked chapters not on the trail follow those that are,
+   * in order by name.</p>
+   * @param limit the minimum size of a linked phrase
+   * @param trail the order in which the chapters are read
+   * @param epub the archive to be written
+   */
+  public void saveEpub(Integer limit, Trail trail, File epub){
+    Map<String, LinkedChapter> byName = getLinkedChapters(limit, trail).stream()
+        .collect(Collectors.toMap(LinkedChapter::getName, Function.identity()));
+    
+    List<LinkedChapter> ordered = new ArrayList<>(byName.size());
+    trail.trailElements()
+        .map((te) -> byName.remove(te.chapter().getName()))
+        .filter((lc) -> lc != null)
+        .forEach(ordered::add);
+    byName.values().stream()
+        .sorted(Comparator.comparing(LinkedChapter::getName))
+        .forEach(ordered::add);
+    
+    File stylesheet = new File(Folder.READABLE.getFolder(), STYLESHEET);
+    new EpubWriter(Files.stripExtension(epub.getName()), stylesheet.exists() ? stylesheet : null)
+        .write(ordered, epub);
+  }
+  
+  private static final String STYLESHEET = "style.css";
+  
+  private static final String CORPUS_FILE = "corpus.bin";
 }
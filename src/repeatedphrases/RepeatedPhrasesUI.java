@@ -1,5 +1,6 @@
 package repeatedphrases;
 
+import common.Files;
 import java.awt.event.ActionEvent;
 import java.awt.Color;
 import java.awt.EventQueue;
@@ -16,6 +17,7 @@ import java.util.stream.Collectors;
 import javax.swing.border.LineBorder;
 import javax.swing.GroupLayout;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -25,6 +27,8 @@ import javax.swing.SwingWorker;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.WindowConstants;
+import html.Markup;
+import operate.Compression;
 import operate.Folder;
 import operate.RepeatedPhrasesApp;
 import operate.Trail;
@@ -37,7 +41,9 @@ import text.Chapter;
  * the current operation, and has four buttons to perform individual operations: create needed
  * folders; turn the HTML books into fully linked chapters; change the order of chapters after
  * having created fully linked chapters, and; change the order of chapters without changing the
- * chapter sequence used by inter-phrase links.</p>
+ * chapter sequence used by inter-phrase links. Drop-down lists select the compressed variant
+ * saved beside each linked chapter and the form of the chapters' markup, and a fifth button
+ * packages the linked chapters in the order of the trail as a single EPUB file.</p>
  */
 public class RepeatedPhrasesUI extends JFrame {
 	
@@ -74,9 +80,14 @@ public class RepeatedPhrasesUI extends JFrame {
     chapterizeLinkButton = new JButton();
     changeOrderButton = new JButton();
     changeTrailButton = new JButton();
+    epubButton = new JButton();
     exitButton = new JButton();
     statusTitleLabel = new JLabel();
     statusLabel = new JLabel();
+    compressionLabel = new JLabel();
+    compressionBox = new JComboBox<>(Compression.values());
+    markupLabel = new JLabel();
+    markupBox = new JComboBox<>(Markup.values());
     
     setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
     
@@ -115,6 +126,11 @@ public class RepeatedPhrasesUI extends JFrame {
     		+ "and next-chapter links without changing next-quote order");
     changeTrailButton.addActionListener(this::changeTrailButtonActionPerformed);
     
+    epubButton.setText("Export EPUB");
+    epubButton.setToolTipText("Packages the linked chapters in trail order as one EPUB file named" 
+        + " after the trail file, in the working directory");
+    epubButton.addActionListener(this::epubButtonActionPerformed);
+    
     exitButton.setText("Exit");
     exitButton.addActionListener(this::exitButtonActionPerformed);
     
@@ -122,6 +138,18 @@ public class RepeatedPhrasesUI extends JFrame {
     
     statusLabel.setText("undefined");
     
+    compressionLabel.setText("Compressed copies");
+    compressionLabel.setToolTipText("The precompressed variant saved beside each linked chapter" 
+        + " for a static web host to send");
+    compressionBox.addActionListener(
+        (e) -> app.setReadableCompression((Compression) compressionBox.getSelectedItem()));
+    
+    markupLabel.setText("Chapter markup");
+    markupLabel.setToolTipText("The form in which the linked chapters are written: as they are," 
+        + " minified, minified with shared titles, or linked by a script in the browser");
+    markupBox.addActionListener(
+        (e) -> app.setReadableMarkup((Markup) markupBox.getSelectedItem()));
+    
     GroupLayout jPanel1Layout = new GroupLayout(jPanel1);
     jPanel1.setLayout(jPanel1Layout);
     jPanel1Layout.setHorizontalGroup(
@@ -199,7 +227,34 @@ public class RepeatedPhrasesUI extends JFrame {
                             		GroupLayout.PREFERRED_SIZE, 
                             		200, 
                             		GroupLayout.PREFERRED_SIZE)))
-                    .addContainerGap())))
+                    .addContainerGap())
+                .addGroup(jPanel1Layout.createSequentialGroup()
+                    .addComponent(compressionLabel)
+                    .addPreferredGap(LayoutStyle.ComponentPlacement.UNRELATED)
+                    .addComponent(
+                    		compressionBox, 
+                    		GroupLayout.PREFERRED_SIZE, 
+                    		GroupLayout.DEFAULT_SIZE, 
+                    		GroupLayout.PREFERRED_SIZE)
+                    .addPreferredGap(
+                    		LayoutStyle.ComponentPlacement.RELATED, 
+                    		GroupLayout.DEFAULT_SIZE, 
+                    		Short.MAX_VALUE)
+                    .addComponent(
+                    		epubButton, 
+                    		GroupLayout.PREFERRED_SIZE, 
+                    		200, 
+                    		GroupLayout.PREFERRED_SIZE)
+                    .addContainerGap())
+                .addGroup(jPanel1Layout.createSequentialGroup()
+                    .addComponent(markupLabel)
+                    .addPreferredGap(LayoutStyle.ComponentPlacement.UNRELATED)
+                    .addComponent(
+                    		markupBox, 
+                    		GroupLayout.PREFERRED_SIZE, 
+                    		GroupLayout.DEFAULT_SIZE, 
+                    		GroupLayout.PREFERRED_SIZE)
+                    .addContainerGap(GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))))
     );
     jPanel1Layout.setVerticalGroup(
         jPanel1Layout.createParallelGroup(GroupLayout.Alignment.LEADING)
@@ -239,6 +294,23 @@ public class RepeatedPhrasesUI extends JFrame {
             .addGroup(jPanel1Layout.createParallelGroup(GroupLayout.Alignment.BASELINE)
                 .addComponent(changeTrailButton)
                 .addComponent(exitButton))
+            .addGap(18, 18, 18)
+            .addGroup(jPanel1Layout.createParallelGroup(GroupLayout.Alignment.BASELINE)
+                .addComponent(compressionLabel)
+                .addComponent(
+                		compressionBox, 
+                		GroupLayout.PREFERRED_SIZE, 
+                		GroupLayout.DEFAULT_SIZE, 
+                		GroupLayout.PREFERRED_SIZE)
+                .addComponent(epubButton))
+            .addPreferredGap(LayoutStyle.ComponentPlacement.RELATED)
+            .addGroup(jPanel1Layout.createParallelGroup(GroupLayout.Alignment.BASELINE)
+                .addComponent(markupLabel)
+                .addComponent(
+                		markupBox, 
+                		GroupLayout.PREFERRED_SIZE, 
+                		GroupLayout.DEFAULT_SIZE, 
+                		GroupLayout.PREFERRED_SIZE))
             .addContainerGap(23, Short.MAX_VALUE))
     );
     
@@ -386,6 +458,45 @@ public class RepeatedPhrasesUI extends JFrame {
     		});
   }
   
+  /**
+   * <p>The fifth button, "Export EPUB"</p>
+   * @param evt
+   */
+  private void epubButtonActionPerformed(ActionEvent evt) {
+    String trailText = trailFileField.getText();
+    File epub = new File(Files.stripExtension(new File(trailText).getName()) + EPUB_EXTENSION);
+    buttonPress(
+        epubButton, 
+        "Exporting EPUB (" 
+            + trailText + ", " 
+            + phraseSizeLimitField.getText() + ")", 
+        () -> "Done: EPUB saved as " + epub.getName(), 
+        () -> {
+          int limit;
+          try{
+            limit = limit();
+          } catch(NumberFormatException e){
+            statusLabelMsg.accept(
+                "Cannot parse specified phrase size as an int: " 
+                + phraseSizeLimitField.getText());
+            return;
+          }
+          
+          Trail trail;
+          try{
+            trail = trail();
+          } catch(FileNotFoundException e){
+            statusLabelMsg.accept(
+                "Could not read trail from " + trailFileField.getText());
+            return;
+          }
+          
+          app.saveEpub(limit, trail, epub);
+        });
+  }
+  
+  private static final String EPUB_EXTENSION = ".epub";
+  
   /**
    * <p>Provides the basic structure of all button-press event responses: if {@link opState} is
    * null (no operation is being performed), then opState is changed to specify the operation
@@ -455,6 +566,7 @@ public class RepeatedPhrasesUI extends JFrame {
   private JButton chapterizeLinkButton;
   private JButton changeOrderButton;
   private JButton changeTrailButton;
+  private JButton epubButton;
   private JButton exitButton;
   
   private JPanel jPanel1;
@@ -471,6 +583,12 @@ public class RepeatedPhrasesUI extends JFrame {
   private JLabel statusTitleLabel;
   private JLabel statusLabel;
   
+  private JLabel compressionLabel;
+  private JComboBox<Compression> compressionBox;
+  
+  private JLabel markupLabel;
+  private JComboBox<Markup> markupBox;
+  
   /**
    * <p>Displays a message on the GUI identifying an action that the current process has
    * taken.</p>
@@ -23,9 +23,15 @@ public class Chapter {
    */
 	private final String body;
 	
+  /**
+   * <p>The words of {@link #body body}.</p>
+   */
+	private final WordScan words;
+	
 	public Chapter(HtmlChapter h){
     this.source = h;
-    this.body = h.body();
+    this.words = h.scanBody();
+    this.body = words.getText();
 	}
 	
   /**
@@ -48,6 +54,14 @@ public class Chapter {
     return source;
 	}
 	
+  /**
+   * <p>Returns the words of {@link #body body}.</p>
+   * @return the words of {@code body}
+   */
+	WordScan getWords(){
+    return words;
+	}
+	
 	@Override
 	public boolean equals(Object o){
     if(o == this){
@@ -66,16 +80,13 @@ public class Chapter {
 	}
 	
 	public Collection<Quote> getAllQuotes(int min, int max, Map<String, Phrase> textToPhrase){
-    List<Integer> wordIndices = getWordIndices(min);
-    
     List<Quote> result = new ArrayList<>();
     for(int size = min; size <= max; size++){
       
-      for(int indexInto = 0; indexInto - size < wordIndices.size(); indexInto++){
-        int endIndex = wordEndIndex(wordIndices, indexInto, size);
-        String phrase = body.substring(wordIndices.get(indexInto), endIndex);
+      for(int first = 0; first + size <= words.wordCount(); first++){
+        String phrase = body.substring(words.wordStart(first), words.wordEnd(first + size - 1));
         result.add(new Quote(
-            getLocations().get(indexInto), 
+            getLocations().get(first), 
             textToPhrase.computeIfAbsent(phrase, Phrase::new)));
       }
     }
@@ -83,41 +94,9 @@ public class Chapter {
     return result;
 	}
 	
-	private static int wordEndIndex(List<Integer> wordIndices, int phraseStart, int phraseSize){
-    return phraseStart + phraseSize == wordIndices.size() 
-        ? wordIndices.size() 
-        : wordIndices.get(phraseStart + phraseSize) - Phrase.WORD_SEPARATOR.length();
-	}
-	
-	private List<Integer> getWordIndices(int min){
-    if(wordIndices == null){
-      wordIndices = IntStream.range(0, body.length())
-          .filter(this::isWordStart)
-          .mapToObj(Integer::valueOf)
-          .collect(Collectors.toList());
-    }
-    
-    //XXX bugfix: if min is large enough, an exception is thrown
-    return wordIndices.subList(0, wordIndices.size() - (min - 1));
-	}
-	
-	private List<Integer> wordIndices = null;
-	
-	private boolean isWordStart(int i){
-    return hasWordChar(i) && !hasWordChar(i);
-	}
-	
-	private boolean hasWordChar(int i){
-    return hasChar(i) && Phrase.isPhraseChar(body.charAt(i));
-	}
-	
-	private boolean hasChar(int i){
-    return 0 <= i && i < body.length();
-	}
-    
 	List<Location> getLocations(){
     if(locations == null){
-      locations = IntStream.range(0, getWordIndices(0).size())
+      locations = IntStream.range(0, words.wordCount())
           .mapToObj((i) -> new Location(i, this))
           .collect(Collectors.toList());
     }
@@ -0,0 +1,73 @@
+package text;
+
+/**
+ * <p>A precomputed set of the chars in the Basic Multilingual Plane, stored as a bitset with one
+ * bit per char, so that testing a char for membership is a shift and a mask with no branches and
+ * no boxing. The set is specified by {@link Character#getType(char) Unicode general category}
+ * plus any number of individual chars.</p>
+ */
+public final class CharClassifier {
+  
+  private static final int BITS_PER_WORD = Long.SIZE;
+  
+  private static final int LOG_BITS_PER_WORD = 6;
+  
+  /**
+   * <p>Bit {@code c % 64} of {@code bits[c / 64]} is set if and only if {@code c} is in this
+   * set.</p>
+   */
+  private final long[] bits = new long[(Character.MAX_VALUE + 1) / BITS_PER_WORD];
+  
+  private CharClassifier(){
+  }
+  
+  /**
+   * <p>Returns a CharClassifier of the chars whose {@link Character#getType(char) general
+   * category} is one of {@code categories} or which occur in {@code extraChars}.</p>
+   * @param categories general categories as defined by {@link Character Character}, such as
+   * {@link Character#LOWERCASE_LETTER LOWERCASE_LETTER}, whose chars are in the set
+   * @param extraChars individual chars in the set regardless of their category
+   * @return a CharClassifier of the chars in any of {@code categories} or in {@code extraChars}
+   */
+  public static CharClassifier of(int[] categories, String extraChars){
+    boolean[] isIncluded = new boolean[Byte.MAX_VALUE + 1];
+    for(int category : categories){
+      isIncluded[category] = true;
+    }
+    
+    CharClassifier result = new CharClassifier();
+    for(int c = 0; c <= Character.MAX_VALUE; c++){
+      if(isIncluded[Character.getType(c)]){
+        result.add((char) c);
+      }
+    }
+    for(int i = 0; i < extraChars.length(); i++){
+      result.add(extraChars.charAt(i));
+    }
+    return result;
+  }
+  
+  private void add(char c){
+    bits[c >>> LOG_BITS_PER_WORD] |= 1L << c;
+  }
+  
+  /**
+   * <p>Returns true if {@code c} is in this set, false otherwise.</p>
+   * @param c the char to be tested
+   * @return true if {@code c} is in this set, false otherwise
+   */
+  public boolean test(char c){
+    return bit(c) != 0;
+  }
+  
+  /**
+   * <p>Returns 1 if {@code c} is in this set, 0 otherwise, for use in arithmetic that avoids
+   * branching on the result.</p>
+   * @param c the char to be tested
+   * @return 1 if {@code c} is in this set, 0 otherwise
+   */
+  public int bit(char c){
+    //a long shift uses only the low six bits of its distance
+    return (int) (bits[c >>> LOG_BITS_PER_WORD] >>> c) & 1;
+  }
+}
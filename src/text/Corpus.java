@@ -0,0 +1,368 @@
+package text;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>The words of a collection of chapters in a binary file that is memory-mapped and read in
+ * place, with no parsing, so that opening a corpus takes as long as mapping the file, and
+ * processes that open the same corpus share its pages.</p> <p>The file is little-endian and has
+ * these sections, each starting at a multiple of four bytes:</p> <ol> <li>a header of
+ * {@value #HEADER_INTS} ints: {@link #MAGIC MAGIC}, {@link #FORMAT_VERSION FORMAT_VERSION}, the
+ * number of distinct words, the number of chapters, and the offsets in the file of each of the
+ * sections below</li> <li>the dictionary index: for each word ID in order, the offset in the
+ * dictionary data of the word's first byte, and then the length of the dictionary data</li>
+ * <li>the dictionary data: the UTF-8 encoded words, sorted by their encoded bytes, so that a
+ * word's ID is its rank and a word can be found by binary search</li> <li>the chapter table: for
+ * each chapter, the offset and length of its name in the name data, the index in the word IDs of
+ * its first word, and its number of words</li> <li>the name data: the UTF-8 encoded names of the
+ * chapters</li> <li>the word IDs: the ID of every word of every chapter, chapter by chapter in
+ * order</li> </ol>
+ */
+public final class Corpus {
+  
+  /**
+   * <p>Identifies a corpus file.</p>
+   */
+  private static final int MAGIC = 0x52504342;
+  
+  /**
+   * <p>The version of the layout of corpus files.</p>
+   */
+  private static final int FORMAT_VERSION = 1;
+  
+  private static final int HEADER_INTS = 9;
+  
+  private static final int H_MAGIC = 0;
+  private static final int H_VERSION = 1;
+  private static final int H_WORD_COUNT = 2;
+  private static final int H_CHAPTER_COUNT = 3;
+  private static final int H_DICTIONARY_INDEX = 4;
+  private static final int H_DICTIONARY_DATA = 5;
+  private static final int H_CHAPTER_TABLE = 6;
+  private static final int H_NAME_DATA = 7;
+  private static final int H_WORD_IDS = 8;
+  
+  private static final int CHAPTER_INTS = 4;
+  
+  private static final int C_NAME_START = 0;
+  private static final int C_NAME_LENGTH = 1;
+  private static final int C_FIRST_WORD = 2;
+  private static final int C_WORD_COUNT = 3;
+  
+  private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+  
+  private final ByteBuffer map;
+  
+  private final int wordCount;
+  private final int chapterCount;
+  
+  private final int dictionaryIndex;
+  private final int dictionaryData;
+  private final int chapterTable;
+  private final int nameData;
+  private final int wordIds;
+  
+  private Corpus(ByteBuffer map){
+    this.map = map;
+    this.wordCount = header(H_WORD_COUNT);
+    this.chapterCount = header(H_CHAPTER_COUNT);
+    this.dictionaryIndex = header(H_DICTIONARY_INDEX);
+    this.dictionaryData = header(H_DICTIONARY_DATA);
+    this.chapterTable = header(H_CHAPTER_TABLE);
+    this.nameData = header(H_NAME_DATA);
+    this.wordIds = header(H_WORD_IDS);
+  }
+  
+  private int header(int field){
+    return map.getInt(field * Integer.BYTES);
+  }
+  
+  /**
+   * <p>Maps the corpus file {@code file} into memory. The mapping lasts until the returned
+   * Corpus is garbage-collected.</p>
+   * @param file a file written by {@link #write(Collection,File) write}
+   * @return the corpus in {@code file}
+   * @throws IllegalArgumentException if {@code file} is not a corpus file of the current
+   * version
+   */
+  public static Corpus open(File file){
+    MappedByteBuffer map;
+    try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+      map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch(IOException e){
+      throw new RuntimeException("Cannot map " + file, e);
+    }
+    map.order(ORDER);
+    
+    if(map.capacity() < HEADER_INTS * Integer.BYTES 
+        || map.getInt(H_MAGIC * Integer.BYTES) != MAGIC 
+        || map.getInt(H_VERSION * Integer.BYTES) != FORMAT_VERSION){
+      throw new IllegalArgumentException(file + " is not a corpus file of the current version");
+    }
+    return new Corpus(map);
+  }
+  
+  /**
+   * <p>Returns the number of distinct words in the corpus, which is one more than the greatest
+   * word ID.</p>
+   * @return the number of distinct words in the corpus
+   */
+  public int wordCount(){
+    return wordCount;
+  }
+  
+  /**
+   * <p>Returns the number of chapters in the corpus.</p>
+   * @return the number of chapters in the corpus
+   */
+  public int chapterCount(){
+    return chapterCount;
+  }
+  
+  /**
+   * <p>Returns the word whose ID is {@code id}.</p>
+   * @param id the ID of a word
+   * @return the word whose ID is {@code id}
+   */
+  public String word(int id){
+    int start = map.getInt(dictionaryIndex + id * Integer.BYTES);
+    int end = map.getInt(dictionaryIndex + (id + 1) * Integer.BYTES);
+    return string(dictionaryData + start, end - start);
+  }
+  
+  /**
+   * <p>Returns the ID of {@code word}, or -1 if {@code word} is not in the corpus.</p>
+   * @param word a word
+   * @return the ID of {@code word}, or -1 if it is not in the corpus
+   */
+  public int id(String word){
+    byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+    int low = 0;
+    int high = wordCount - 1;
+    while(low <= high){
+      int mid = (low + high) >>> 1;
+      int start = map.getInt(dictionaryIndex + mid * Integer.BYTES);
+      int end = map.getInt(dictionaryIndex + (mid + 1) * Integer.BYTES);
+      int c = compareAt(dictionaryData + start, end - start, bytes);
+      if(c < 0){
+        low = mid + 1;
+      } else if(c > 0){
+        high = mid - 1;
+      } else{
+        return mid;
+      }
+    }
+    return -1;
+  }
+  
+  /**
+   * <p>Compares the {@code length} bytes of the corpus at {@code position} to {@code bytes} as
+   * unsigned bytes.</p>
+   */
+  private int compareAt(int position, int length, byte[] bytes){
+    int n = Math.min(length, bytes.length);
+    for(int i = 0; i < n; i++){
+      int c = Integer.compare(map.get(position + i) & 0xFF, bytes[i] & 0xFF);
+      if(c != 0){
+        return c;
+      }
+    }
+    return Integer.compare(length, bytes.length);
+  }
+  
+  /**
+   * <p>Returns the name of the {@code chapter}-th chapter.</p>
+   * @param chapter the index of a chapter
+   * @return the name of the {@code chapter}-th chapter
+   */
+  public String chapterName(int chapter){
+    return string(
+        nameData + chapterField(chapter, C_NAME_START), 
+        chapterField(chapter, C_NAME_LENGTH));
+  }
+  
+  /**
+   * <p>Returns the number of words in the {@code chapter}-th chapter.</p>
+   * @param chapter the index of a chapter
+   * @return the number of words in the {@code chapter}-th chapter
+   */
+  public int chapterWordCount(int chapter){
+    return chapterField(chapter, C_WORD_COUNT);
+  }
+  
+  /**
+   * <p>Returns the IDs of the words of the {@code chapter}-th chapter in order, read straight
+   * from the mapped file.</p>
+   * @param chapter the index of a chapter
+   * @return a read-only view of the IDs of the words of the {@code chapter}-th chapter
+   */
+  public IntBuffer wordIds(int chapter){
+    int from = wordIds + chapterField(chapter, C_FIRST_WORD) * Integer.BYTES;
+    ByteBuffer view = map.duplicate();
+    view.position(from);
+    view.limit(from + chapterField(chapter, C_WORD_COUNT) * Integer.BYTES);
+    return view.slice().order(ORDER).asIntBuffer().asReadOnlyBuffer();
+  }
+  
+  private int chapterField(int chapter, int field){
+    return map.getInt(chapterTable + (chapter * CHAPTER_INTS + field) * Integer.BYTES);
+  }
+  
+  private String string(int position, int length){
+    byte[] bytes = new byte[length];
+    ByteBuffer view = map.duplicate();
+    view.position(position);
+    view.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+  
+  /**
+   * <p>Writes the words of {@code chapters}, in the order given, to a corpus file at
+   * {@code file}. The file is written under a temporary name and then moved into place, so a
+   * process that has the old corpus mapped keeps reading the old corpus.</p>
+   * @param chapters the chapters whose words are written
+   * @param file the corpus file
+   */
+  public static void write(Collection<Chapter> chapters, File file){
+    //the words of each chapter
+    List<String[]> texts = new ArrayList<>(chapters.size());
+    Map<String, byte[]> encoded = new HashMap<>();
+    for(Chapter chapter : chapters){
+      WordScan words = chapter.getWords();
+      String[] text = new String[words.wordCount()];
+      for(int i = 0; i < text.length; i++){
+        text[i] = words.getText().substring(words.wordStart(i), words.wordEnd(i));
+        encoded.computeIfAbsent(text[i], (w) -> w.getBytes(StandardCharsets.UTF_8));
+      }
+      texts.add(text);
+    }
+    
+    //the dictionary, sorted by encoded bytes so that an ID is a word's rank
+    List<String> dictionary = new ArrayList<>(encoded.keySet());
+    dictionary.sort((a, b) -> compareUnsigned(encoded.get(a), encoded.get(b)));
+    Map<String, Integer> ids = new HashMap<>();
+    int dictionaryBytes = 0;
+    for(String word : dictionary){
+      ids.put(word, ids.size());
+      dictionaryBytes += encoded.get(word).length;
+    }
+    
+    List<byte[]> names = new ArrayList<>(chapters.size());
+    int nameBytes = 0;
+    int totalWords = 0;
+    for(Chapter chapter : chapters){
+      byte[] name = chapter.getName().getBytes(StandardCharsets.UTF_8);
+      names.add(name);
+      nameBytes += name.length;
+    }
+    for(String[] text : texts){
+      totalWords += text.length;
+    }
+    
+    int dictionaryIndex = HEADER_INTS * Integer.BYTES;
+    int dictionaryData = dictionaryIndex + (dictionary.size() + 1) * Integer.BYTES;
+    int chapterTable = align(dictionaryData + dictionaryBytes);
+    int nameData = chapterTable + chapters.size() * CHAPTER_INTS * Integer.BYTES;
+    int wordIds = align(nameData + nameBytes);
+    int size = wordIds + totalWords * Integer.BYTES;
+    
+    ByteBuffer out = ByteBuffer.allocate(size).order(ORDER);
+    out.putInt(MAGIC)
+        .putInt(FORMAT_VERSION)
+        .putInt(dictionary.size())
+        .putInt(chapters.size())
+        .putInt(dictionaryIndex)
+        .putInt(dictionaryData)
+        .putInt(chapterTable)
+        .putInt(nameData)
+        .putInt(wordIds);
+    
+    int offset = 0;
+    for(String word : dictionary){
+      out.putInt(offset);
+      offset += encoded.get(word).length;
+    }
+    out.putInt(offset);
+    for(String word : dictionary){
+      out.put(encoded.get(word));
+    }
+    
+    out.position(chapterTable);
+    int nameStart = 0;
+    int firstWord = 0;
+    for(int c = 0; c < names.size(); c++){
+      out.putInt(nameStart)
+          .putInt(names.get(c).length)
+          .putInt(firstWord)
+          .putInt(texts.get(c).length);
+      nameStart += names.get(c).length;
+      firstWord += texts.get(c).length;
+    }
+    for(byte[] name : names){
+      out.put(name);
+    }
+    
+    out.position(wordIds);
+    for(String[] text : texts){
+      for(String word : text){
+        out.putInt(ids.get(word));
+      }
+    }
+    out.flip();
+    
+    save(out, file);
+  }
+  
+  private static int align(int offset){
+    return (offset + Integer.BYTES - 1) & -Integer.BYTES;
+  }
+  
+  private static int compareUnsigned(byte[] a, byte[] b){
+    int n = Math.min(a.length, b.length);
+    for(int i = 0; i < n; i++){
+      int c = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+      if(c != 0){
+        return c;
+      }
+    }
+    return Integer.compare(a.length, b.length);
+  }
+  
+  private static void save(ByteBuffer content, File file){
+    File folder = file.getAbsoluteFile().getParentFile();
+    folder.mkdirs();
+    try{
+      File temp = File.createTempFile(file.getName(), null, folder);
+      try{
+        try(FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)){
+          while(content.hasRemaining()){
+            channel.write(content);
+          }
+        }
+        Files.move(
+            temp.toPath(), 
+            file.toPath(), 
+            StandardCopyOption.REPLACE_EXISTING);
+      } finally{
+        temp.delete();
+      }
+    } catch(IOException e){
+      throw new RuntimeException("Cannot save the corpus to " + file, e);
+    }
+  }
+}
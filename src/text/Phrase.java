@@ -66,25 +66,31 @@ public class Phrase implements Comparable<Phrase>{
     return text;
   }
   
-  public static final char E_ACUTE = '\u00E9';
-  public static final char E_CIRCUMFLEX = '\u00EA';
+  /**
+   * <p>The word-characters: letters of any script, including those with diacritics and letters
+   * written with combining marks, decimal digits, apostrophes, and hyphens.</p>
+   */
+  public static final CharClassifier PHRASE_CHARS = CharClassifier.of(
+      new int[]{
+          Character.UPPERCASE_LETTER, 
+          Character.LOWERCASE_LETTER, 
+          Character.TITLECASE_LETTER, 
+          Character.MODIFIER_LETTER, 
+          Character.OTHER_LETTER, 
+          Character.NON_SPACING_MARK, 
+          Character.COMBINING_SPACING_MARK, 
+          Character.DECIMAL_DIGIT_NUMBER}, 
+      "'-");
   
   /**
-   * <p>Returns true if {@code c} is a legal word-character: alphanumeric, apostrophe, hyphen,
-   * e-acute, or e-circumflex.</p>
+   * <p>Returns true if {@code c} is a legal {@link #PHRASE_CHARS word-character}: a letter,
+   * combining mark, decimal digit, apostrophe, or hyphen.</p>
    * @param c a character to be tested for legality as a word-character
-   * @return true if {@code c} is a legal word-character: alphanumeric, apostrophe, hyphen,
-   * e-acute, or e-circumflex
+   * @return true if {@code c} is a legal word-character: a letter, combining mark, decimal digit,
+   * apostrophe, or hyphen
    */
-  public static boolean isPhraseChar(Character c){
-    return c != null 
-        && (('a' <= c && c <= 'z') 
-            || ('A' <= c && c <= 'Z') 
-            || c == '\'' 
-            || c == '-' 
-            || ('0' <= c && c <= '9') 
-            || c == E_ACUTE 
-            || c == E_CIRCUMFLEX);
+  public static boolean isPhraseChar(char c){
+    return PHRASE_CHARS.test(c);
   }
   
   @Override
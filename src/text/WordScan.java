@@ -0,0 +1,112 @@
+package text;
+
+import java.util.Arrays;
+
+/**
+ * <p>The words of a piece of text, found in a single pass over its characters. The text is
+ * normalized so that every maximal run of non-{@link Phrase#PHRASE_CHARS word
+ * characters} becomes a single {@link Phrase#WORD_SEPARATOR_CHAR space}, which makes the text of
+ * any run of consecutive words a single-spaced phrase. The start and end of every word in the
+ * normalized text are recorded as they are found.</p> <p>The scan classifies each character with
+ * a bitset lookup and advances its output positions by arithmetic on the classification instead
+ * of branching on it, so the loop runs at the same speed however the words and separators of the
+ * text are arranged.</p>
+ */
+public final class WordScan {
+  
+  private final String text;
+  private final int[] starts;
+  private final int[] ends;
+  private final int wordCount;
+  
+  private WordScan(String text, int[] starts, int[] ends, int wordCount){
+    this.text = text;
+    this.starts = starts;
+    this.ends = ends;
+    this.wordCount = wordCount;
+  }
+  
+  /**
+   * <p>Scans the first {@code length} characters of {@code raw} for words. Separators before the
+   * first word and after the last word are dropped.</p>
+   * @param raw the characters to scan
+   * @param length the number of characters of {@code raw} to scan
+   * @return the words of the first {@code length} characters of {@code raw}
+   */
+  public static WordScan scan(char[] raw, int length){
+    char[] out = new char[length];
+    //words alternate with separators, so there are at most (length + 1) / 2 of them; the extra
+    //slot takes the unconditional store made for a word that does not start or end
+    int[] starts = new int[(length + 1) / 2 + 1];
+    int[] ends = new int[(length + 1) / 2 + 1];
+    
+    int n = 0;
+    int startCount = 0;
+    int endCount = 0;
+    int prev = 0;
+    for(int i = 0; i < length; i++){
+      char c = raw[i];
+      int word = Phrase.PHRASE_CHARS.bit(c);
+      
+      //c if it is a word character, otherwise the separator
+      out[n] = (char) (c ^ ((c ^ Phrase.WORD_SEPARATOR_CHAR) & (word - 1)));
+      
+      starts[startCount] = n;
+      startCount += word & ~prev;
+      ends[endCount] = n;
+      endCount += ~word & prev;
+      
+      //keep every word character and the first separator after a word
+      n += word | prev;
+      prev = word;
+    }
+    
+    ends[endCount] = n;
+    endCount += prev;
+    n -= ~prev & Math.min(n, 1); //drop the separator after the last word, if any
+    
+    return new WordScan(
+        new String(out, 0, n), 
+        Arrays.copyOf(starts, startCount), 
+        Arrays.copyOf(ends, endCount), 
+        startCount);
+  }
+  
+  /**
+   * <p>Returns the normalized text.</p>
+   * @return the normalized text
+   */
+  public String getText(){
+    return text;
+  }
+  
+  /**
+   * <p>Returns the number of words in the text.</p>
+   * @return the number of words in the text
+   */
+  public int wordCount(){
+    return wordCount;
+  }
+  
+  /**
+   * <p>Returns the position in the {@link #getText() normalized text} of the first character of
+   * the {@code index}-th (zero-based) word.</p>
+   * @param index the index of a word
+   * @return the position in the normalized text of the first character of the {@code index}-th
+   * word
+   */
+  public int wordStart(int index){
+    return starts[index];
+  }
+  
+  /**
+   * <p>Returns the position in the {@link #getText() normalized text} just past the last
+   * character of the {@code index}-th (zero-based) word.</p>
+   * @param index the index of a word
+   * @return the position in the normalized text just past the last character of the
+   * {@code index}-th word
+   */
+  public int wordEnd(int index){
+    return ends[index];
+  }
+}